@@ -0,0 +1,42 @@
+package dev.mccue.jproject;
+
+import dev.mccue.jproject.model.ApplicationModule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing jproject.toml, which happens on every single command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplicationModuleBenchmark {
+    @Param({ "5", "50" })
+    public int dependencies;
+
+    private Path directory;
+    private Path toml;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("jproject-bench");
+        this.toml = BenchFixtures.toml(this.directory, this.dependencies);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchFixtures.delete(this.directory);
+    }
+
+    @Benchmark
+    public ApplicationModule fromFile() throws Exception {
+        return ApplicationModule.fromFile(this.toml);
+    }
+}
@@ -0,0 +1,61 @@
+package dev.mccue.jproject;
+
+import dev.mccue.jproject.model.ApplicationModule;
+import dev.mccue.jproject.model.AvailableDuring;
+import dev.mccue.jproject.model.Basis;
+import dev.mccue.jproject.model.MavenDependency;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building bases and using them as keys, which happens once per scope per command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BasisBenchmark {
+    @Param({ "5", "50" })
+    public int dependencies;
+
+    private List<MavenDependency> mavenDependencies;
+    private Basis basis;
+    private Basis equalBasis;
+
+    @Setup
+    public void setUp() throws Exception {
+        var directory = Files.createTempDirectory("jproject-bench");
+        try {
+            this.mavenDependencies = ApplicationModule
+                    .fromFile(BenchFixtures.toml(directory, this.dependencies))
+                    .dependencies(AvailableDuring.TEST_RUN_TIME);
+        } finally {
+            BenchFixtures.delete(directory);
+        }
+        this.basis = build();
+        this.equalBasis = build();
+    }
+
+    @Benchmark
+    public Basis build() {
+        return Basis.usingMavenCentral()
+                .addDependencies(this.mavenDependencies)
+                .build();
+    }
+
+    @Benchmark
+    public boolean basisEquals() {
+        return this.basis.equals(this.equalBasis);
+    }
+
+    @Benchmark
+    public int basisHashCode() {
+        return this.basis.hashCode();
+    }
+}
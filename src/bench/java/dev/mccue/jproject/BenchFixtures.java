@@ -0,0 +1,120 @@
+package dev.mccue.jproject;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Synthetic inputs for the benchmarks: jproject.toml files, maven repositories and
+ * source trees of whatever size is needed.
+ */
+final class BenchFixtures {
+    static final String GROUP_ID = "dev.mccue.jproject.bench";
+
+    private BenchFixtures() {}
+
+    /**
+     * Writes a jproject.toml with the given number of dependencies in each table.
+     */
+    static Path toml(Path directory, int dependencies) {
+        var toml = new StringBuilder("""
+                [application]
+                main-class = "example.Main"
+
+                """);
+        for (var table : new String[] { "dependencies", "test-only-dependencies", "bench-only-dependencies" }) {
+            toml.append('[').append(table).append("]\n");
+            for (int i = 0; i < dependencies; i++) {
+                toml.append("\"%s/%s-%d\" = \"1.%d.0\"\n".formatted(GROUP_ID, table, i, i));
+            }
+            toml.append('\n');
+        }
+
+        try {
+            var file = directory.resolve("jproject.toml");
+            Files.writeString(file, toml);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a maven repository where artifact {@code lib-i} depends on {@code lib-(i+1)}
+     * and {@code lib-(i+2)}, for {@code 0 <= i < size}.
+     */
+    static void repository(Path directory, int size) {
+        try {
+            for (int i = 0; i < size; i++) {
+                var artifactId = "lib-" + i;
+                var artifactDirectory = directory.resolve(Path.of(GROUP_ID.replace('.', '/'), artifactId, "1.0"));
+                Files.createDirectories(artifactDirectory);
+
+                var dependencies = new StringBuilder();
+                for (int j = i + 1; j <= i + 2 && j < size; j++) {
+                    dependencies.append("""
+                            <dependency>
+                              <groupId>%s</groupId>
+                              <artifactId>lib-%d</artifactId>
+                              <version>1.0</version>
+                            </dependency>
+                            """.formatted(GROUP_ID, j));
+                }
+                Files.writeString(artifactDirectory.resolve(artifactId + "-1.0.pom"), """
+                        <project>
+                          <modelVersion>4.0.0</modelVersion>
+                          <groupId>%s</groupId>
+                          <artifactId>%s</artifactId>
+                          <version>1.0</version>
+                          <dependencies>
+                        %s
+                          </dependencies>
+                        </project>
+                        """.formatted(GROUP_ID, artifactId, dependencies));
+
+                try (var jar = new ZipOutputStream(Files.newOutputStream(artifactDirectory.resolve(artifactId + "-1.0.jar")))) {
+                    jar.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+                    jar.write("Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+                    jar.closeEntry();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a tree of java sources, with some resources mixed in, spread over packages
+     * a few levels deep.
+     */
+    static void sourceTree(Path directory, int files) {
+        try {
+            for (int i = 0; i < files; i++) {
+                var packageDirectory = directory.resolve(Path.of("p" + (i % 10), "q" + (i % 100), "r" + (i % 1000)));
+                Files.createDirectories(packageDirectory);
+                if (i % 10 == 0) {
+                    Files.writeString(packageDirectory.resolve("resource" + i + ".properties"), "a=b\n");
+                }
+                else {
+                    Files.writeString(packageDirectory.resolve("C" + i + ".java"), "class C" + i + " {}\n");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void delete(Path directory) {
+        try {
+            FileUtils.deleteDirectory(directory.toFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package dev.mccue.jproject;
+
+import dev.mccue.jproject.model.Basis;
+import dev.mccue.jproject.model.MavenDependency;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up the path of a basis, which every command does before it can do anything useful.
+ * The resolution itself is stubbed out, so only the cost of the cache is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathCacheBenchmark {
+    private Path directory;
+    private PathCache pathCache;
+    private Basis basis;
+    private int misses;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("jproject-bench");
+        this.pathCache = new PathCache(this.directory);
+        this.basis = Basis.usingMavenCentral()
+                .addDependency(new MavenDependency(BenchFixtures.GROUP_ID, "hit", "1.0"))
+                .build();
+        this.pathCache.path(this.basis, __ -> "resolved");
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchFixtures.delete(this.directory);
+    }
+
+    /**
+     * A hit in a cache that was already used in this process.
+     */
+    @Benchmark
+    public String memoryHit() {
+        return this.pathCache.path(this.basis, __ -> "resolved");
+    }
+
+    /**
+     * A hit in a cache that was just opened, like at the start of every command.
+     */
+    @Benchmark
+    public String diskHit() {
+        return new PathCache(this.directory).path(this.basis, __ -> "resolved");
+    }
+
+    /**
+     * A miss, which has to write a new entry and possibly evict old ones.
+     */
+    @Benchmark
+    public String miss() {
+        var basis = Basis.usingMavenCentral()
+                .addDependency(new MavenDependency(BenchFixtures.GROUP_ID, "miss", "1." + this.misses++))
+                .build();
+        return this.pathCache.path(basis, __ -> "resolved");
+    }
+}
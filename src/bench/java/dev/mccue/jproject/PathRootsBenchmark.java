@@ -0,0 +1,64 @@
+package dev.mccue.jproject;
+
+import dev.mccue.jproject.model.Basis;
+import dev.mccue.jproject.model.MavenDependency;
+import dev.mccue.jproject.model.MavenRepository;
+import dev.mccue.jproject.model.Resolver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving against a file repository, so the network is out of the picture. Every invocation
+ * gets an empty local repository and a resolver which hasn't parsed any POMs yet, so this
+ * measures a cold resolution, including copying every file out of the repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathRootsBenchmark {
+    @Param({ "10", "200" })
+    public int artifacts;
+
+    private Path repository;
+    private Path localRepository;
+    private Basis basis;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.repository = Files.createTempDirectory("jproject-bench-repository");
+        BenchFixtures.repository(this.repository, this.artifacts);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws Exception {
+        this.localRepository = Files.createTempDirectory("jproject-bench-local-repository");
+        this.basis = Basis.builder()
+                .resolver(Resolver.maven(this.localRepository))
+                .addRepository(new MavenRepository("bench", this.repository.toUri()))
+                .addDependency(new MavenDependency(BenchFixtures.GROUP_ID, "lib-0", "1.0"))
+                .build();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() {
+        BenchFixtures.delete(this.localRepository);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchFixtures.delete(this.repository);
+    }
+
+    @Benchmark
+    public List<Path> pathRoots() {
+        return this.basis.pathRoots();
+    }
+}
@@ -0,0 +1,89 @@
+package dev.mccue.jproject;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding every source file under a directory, which every compile and fmt starts with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SourceDiscoveryBenchmark {
+    @Param({ "1000", "20000" })
+    public int files;
+
+    private Path directory;
+    private Path coldCache;
+    private Path warmCache;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("jproject-bench-sources");
+        BenchFixtures.sourceTree(this.directory, this.files);
+        Files.createFile(this.directory.resolve("jproject.toml"));
+        // Recent modification times aren't trusted by the index, so age everything.
+        var anHourAgo = FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS));
+        try (var paths = Files.walk(this.directory)) {
+            for (var path : (Iterable<Path>) paths::iterator) {
+                Files.setLastModifiedTime(path, anHourAgo);
+            }
+        }
+
+        this.coldCache = this.directory.resolve("cold-index");
+        this.warmCache = this.directory.resolve("warm-index");
+        var index = SourceIndex.scan(this.directory, this.warmCache);
+        index.files(this.directory, ".java").forEach(index::sha256);
+        index.save();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchFixtures.delete(this.directory);
+    }
+
+    @Benchmark
+    public Collection<File> listFiles() {
+        return FileUtils.listFiles(this.directory.toFile(), new String[] { "java" }, true);
+    }
+
+    @Benchmark
+    public List<Path> walk() throws Exception {
+        try (var files = Files.walk(this.directory)) {
+            return files.filter(file -> file.toString().endsWith(".java")).toList();
+        }
+    }
+
+    @Benchmark
+    public List<Path> sourceIndexCold() {
+        return SourceIndex.scan(this.directory, this.coldCache).files(this.directory, ".java");
+    }
+
+    /**
+     * Walking with a cache from an earlier walk, then hashing every source the way the
+     * incremental compiler does.
+     */
+    @Benchmark
+    public int sourceIndexWarm() {
+        var index = SourceIndex.scan(this.directory, this.warmCache);
+        var hashed = 0;
+        for (var file : index.files(this.directory, ".java")) {
+            hashed += index.sha256(file).length();
+        }
+        return hashed;
+    }
+}
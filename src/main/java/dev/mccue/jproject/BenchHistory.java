@@ -0,0 +1,250 @@
+package dev.mccue.jproject;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * The results of every benchmark run, kept as JMH's JSON output, and the comparison of one run
+ * against another.
+ *
+ * <p>Runs are named by when they finished and the git commit they ran at, like
+ * {@code 20220525T101500Z-3f2a9c1d0b7e.json}, so sorting them by name sorts them by time. A commit
+ * with uncommitted changes gets a {@code -dirty} suffix.
+ *
+ * <p>A benchmark only counts as having changed when JMH's 99.9% confidence intervals for the two
+ * runs don't overlap and the scores differ by more than a threshold, so noise between runs isn't
+ * reported as a regression.
+ */
+final class BenchHistory {
+    private BenchHistory() {}
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    /**
+     * A single benchmark's score from one run.
+     *
+     * @param name The benchmark, along with any parameters it ran with.
+     * @param mode The JMH mode, like thrpt or avgt.
+     * @param score The score.
+     * @param low The bottom of the confidence interval, or NaN if there wasn't enough data for one.
+     * @param high The top of the confidence interval, or NaN if there wasn't enough data for one.
+     * @param unit The unit of the score.
+     */
+    record Score(String name, String mode, double score, double low, double high, String unit) {
+        /**
+         * @return Whether a higher score is better, as it is for throughput. For every other
+         * mode the score is a time.
+         */
+        boolean higherIsBetter() {
+            return "thrpt".equals(this.mode);
+        }
+    }
+
+    /**
+     * Moves the JSON output of a finished run into the history.
+     *
+     * @return Where the run was saved.
+     */
+    static Path record(Path results, Path historyDir) throws IOException {
+        Files.createDirectories(historyDir);
+        var name = TIMESTAMP.format(ZonedDateTime.now(ZoneOffset.UTC)) + "-" + commit() + ".json";
+        var saved = historyDir.resolve(name);
+        Files.move(results, saved, StandardCopyOption.REPLACE_EXISTING);
+        return saved;
+    }
+
+    /**
+     * @return Every saved run, oldest first.
+     */
+    static List<Path> runs(Path historyDir) throws IOException {
+        if (!Files.isDirectory(historyDir)) {
+            return List.of();
+        }
+        try (var files = Files.list(historyDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".json"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Finds a run by part of its name, which is usually a commit hash. The most recent match wins.
+     */
+    static Optional<Path> find(Path historyDir, String query) throws IOException {
+        var runs = new ArrayList<>(runs(historyDir));
+        Collections.reverse(runs);
+        return runs.stream()
+                .filter(run -> run.getFileName().toString().contains(query))
+                .findFirst();
+    }
+
+    /**
+     * Prints how every benchmark in the candidate run compares with the baseline run.
+     *
+     * @param threshold The smallest relative change worth reporting, like 0.05 for 5%.
+     * @return Whether no benchmark got significantly worse.
+     */
+    static boolean compare(Path baseline, Path candidate, double threshold) throws IOException {
+        var before = read(baseline);
+        var after = read(candidate);
+
+        System.out.println("Baseline:  " + baseline.getFileName());
+        System.out.println("Candidate: " + candidate.getFileName());
+        System.out.println();
+        System.out.printf("%-60s %-6s %26s %26s %9s  %s%n", "Benchmark", "Mode", "Baseline", "Candidate", "Change", "");
+
+        var regressions = 0;
+        var names = new LinkedHashSet<>(before.keySet());
+        names.addAll(after.keySet());
+        for (var name : names) {
+            var old = before.get(name);
+            var current = after.get(name);
+            if (old == null || current == null) {
+                var score = old == null ? current : old;
+                System.out.printf(
+                        "%-60s %-6s %26s %26s %9s  %s%n",
+                        score.name(),
+                        score.mode(),
+                        old == null ? "" : format(old),
+                        current == null ? "" : format(current),
+                        "",
+                        old == null ? "new" : "removed"
+                );
+                continue;
+            }
+
+            var change = (current.score() - old.score()) / old.score();
+            var better = current.higherIsBetter() ? change > 0 : change < 0;
+            String verdict;
+            if (Math.abs(change) < threshold) {
+                verdict = "";
+            }
+            else if (Double.isNaN(old.low()) || Double.isNaN(current.low())) {
+                verdict = "inconclusive";
+            }
+            else if (overlaps(old, current)) {
+                verdict = "";
+            }
+            else if (better) {
+                verdict = "improvement";
+            }
+            else {
+                verdict = "REGRESSION";
+                regressions++;
+            }
+            System.out.printf(
+                    "%-60s %-6s %26s %26s %+8.1f%%  %s%n",
+                    current.name(),
+                    current.mode(),
+                    format(old),
+                    format(current),
+                    change * 100,
+                    verdict
+            );
+        }
+
+        System.out.println();
+        System.out.println(regressions == 0 ? "No regressions" : regressions + " regressions");
+        return regressions == 0;
+    }
+
+    private static boolean overlaps(Score a, Score b) {
+        return a.low() <= b.high() && b.low() <= a.high();
+    }
+
+    private static String format(Score score) {
+        var error = Double.isNaN(score.low()) ? 0 : (score.high() - score.low()) / 2;
+        return String.format("%.3f \u00b1 %.3f %s", score.score(), error, score.unit());
+    }
+
+    /**
+     * @return Every score in a JMH JSON results file, by benchmark and mode.
+     */
+    static Map<String, Score> read(Path results) throws IOException {
+        JsonElement json;
+        try (Reader reader = Files.newBufferedReader(results)) {
+            json = new JsonParser().parse(reader);
+        }
+
+        var scores = new LinkedHashMap<String, Score>();
+        for (var element : json.getAsJsonArray()) {
+            var benchmark = element.getAsJsonObject();
+            var name = new StringBuilder(benchmark.get("benchmark").getAsString());
+            if (benchmark.has("params")) {
+                var params = new TreeMap<String, String>();
+                benchmark.getAsJsonObject("params").entrySet()
+                        .forEach(entry -> params.put(entry.getKey(), entry.getValue().getAsString()));
+                name.append(params.toString().replace('{', '(').replace('}', ')'));
+            }
+            var mode = benchmark.get("mode").getAsString();
+            var metric = benchmark.getAsJsonObject("primaryMetric");
+            var confidence = metric.getAsJsonArray("scoreConfidence");
+            var score = new Score(
+                    name.toString(),
+                    mode,
+                    number(metric, "score"),
+                    confidence == null ? Double.NaN : number(confidence.get(0)),
+                    confidence == null ? Double.NaN : number(confidence.get(1)),
+                    metric.get("scoreUnit").getAsString()
+            );
+            scores.put(score.name() + " " + score.mode(), score);
+        }
+        return scores;
+    }
+
+    private static double number(JsonObject object, String key) {
+        return number(object.get(key));
+    }
+
+    /**
+     * JMH writes NaN as a string.
+     */
+    private static double number(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return Double.NaN;
+        }
+        var primitive = element.getAsJsonPrimitive();
+        return primitive.isNumber() ? primitive.getAsDouble() : Double.parseDouble(primitive.getAsString());
+    }
+
+    /**
+     * @return The short hash of the current git commit, or "unknown" outside of a repository.
+     */
+    private static String commit() {
+        var hash = git("rev-parse", "--short=12", "HEAD");
+        if (hash.isEmpty()) {
+            return "unknown";
+        }
+        return git("status", "--porcelain", "--untracked-files=no").isEmpty() ? hash : hash + "-dirty";
+    }
+
+    private static String git(String... args) {
+        var command = new ArrayList<String>();
+        command.add("git");
+        command.addAll(List.of(args));
+        try {
+            var process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            var output = new String(process.getInputStream().readAllBytes()).trim();
+            return process.waitFor() == 0 ? output : "";
+        } catch (IOException e) {
+            // No git at all.
+            return "";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+}
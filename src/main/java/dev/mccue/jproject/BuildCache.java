@@ -0,0 +1,235 @@
+package dev.mccue.jproject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compiler output kept between builds, so sources which were already compiled somewhere else on
+ * this machine - in another worktree, or before switching branches - don't have to be compiled
+ * again.
+ *
+ * <p>An entry is a zip of named files, stored under a key which the compiler makes out of
+ * everything that went into the compilation. Where entries are kept is up to a {@link Storage};
+ * the one used by default is a directory under ~/.jproject. Entries which haven't been used for
+ * a while are evicted, and so are the least recently used ones once there are too many bytes.
+ *
+ * <p>Setting the {@code jproject.build-cache} system property or the {@code JPROJECT_BUILD_CACHE}
+ * environment variable to false turns the cache off.
+ */
+final class BuildCache {
+    private static Optional<BuildCache> local;
+
+    /**
+     * Somewhere to keep cache entries.
+     */
+    interface Storage {
+        /**
+         * Copies the entry for the key into the given file.
+         *
+         * @return Whether there was an entry.
+         */
+        boolean get(String key, Path destination) throws IOException;
+
+        /**
+         * Stores the given file as the entry for the key, replacing any entry already there.
+         */
+        void put(String key, Path entry) throws IOException;
+
+        /**
+         * Removes every entry which hasn't been used within the given age, then the least
+         * recently used entries until the rest fit in the given number of bytes.
+         */
+        void evict(long maxBytes, Duration maxAge) throws IOException;
+    }
+
+    /**
+     * Keeps every entry as a file in a directory. Reading an entry touches it, so modification
+     * times say when each entry was last used. Entries are written to a temporary file and moved
+     * into place, and eviction holds a file lock, so processes can share the directory.
+     */
+    static final class DirectoryStorage implements Storage {
+        private static final String LOCK_FILE = ".lock";
+
+        private final Path directory;
+
+        DirectoryStorage(Path directory) {
+            this.directory = directory;
+        }
+
+        private Path file(String key) {
+            return this.directory.resolve(key + ".zip");
+        }
+
+        @Override
+        public boolean get(String key, Path destination) throws IOException {
+            var file = file(key);
+            try {
+                Files.copy(file, destination, StandardCopyOption.REPLACE_EXISTING);
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                return true;
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void put(String key, Path entry) throws IOException {
+            Files.createDirectories(this.directory);
+            var temp = Files.createTempFile(this.directory, key, ".tmp");
+            try {
+                Files.copy(entry, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, file(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private record Entry(Path file, long size, FileTime lastUsed) {}
+
+        @Override
+        public void evict(long maxBytes, Duration maxAge) throws IOException {
+            if (!Files.isDirectory(this.directory)) {
+                return;
+            }
+            try (var lockChannel = FileChannel.open(
+                    this.directory.resolve(LOCK_FILE),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE
+            )) {
+                // Released when the channel is closed
+                lockChannel.lock();
+
+                var oldest = FileTime.fromMillis(System.currentTimeMillis() - maxAge.toMillis());
+                var entries = new ArrayList<Entry>();
+                long totalSize = 0;
+                try (var files = Files.list(this.directory)) {
+                    for (var file : (Iterable<Path>) files::iterator) {
+                        if (!file.getFileName().toString().endsWith(".zip")) {
+                            continue;
+                        }
+                        try {
+                            var entry = new Entry(file, Files.size(file), Files.getLastModifiedTime(file));
+                            if (entry.lastUsed().compareTo(oldest) < 0) {
+                                Files.deleteIfExists(file);
+                                continue;
+                            }
+                            entries.add(entry);
+                            totalSize += entry.size();
+                        } catch (NoSuchFileException e) {
+                            // Someone else got to it first
+                        }
+                    }
+                }
+
+                entries.sort(Comparator.comparing(Entry::lastUsed));
+                var i = 0;
+                while (totalSize > maxBytes && i < entries.size()) {
+                    var entry = entries.get(i++);
+                    Files.deleteIfExists(entry.file());
+                    totalSize -= entry.size();
+                }
+            }
+        }
+    }
+
+    private final Storage storage;
+    private final long maxBytes;
+    private final Duration maxAge;
+
+    BuildCache(Storage storage, long maxBytes, Duration maxAge) {
+        this.storage = storage;
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * @return The cache shared by every project on this machine, unless it has been turned off.
+     */
+    static synchronized Optional<BuildCache> local() {
+        if (local == null) {
+            var enabled = System.getProperty("jproject.build-cache", System.getenv("JPROJECT_BUILD_CACHE"));
+            local = "false".equalsIgnoreCase(enabled)
+                    ? Optional.empty()
+                    : Optional.of(new BuildCache(
+                            new DirectoryStorage(Conventions.BUILD_CACHE_DIR),
+                            Conventions.BUILD_CACHE_MAX_BYTES,
+                            Conventions.BUILD_CACHE_MAX_AGE
+                    ));
+        }
+        return local;
+    }
+
+    /**
+     * Writes out every file in the entry for the key. Nothing is written unless the whole entry
+     * could be read.
+     *
+     * @param beforeRestoring Run once the entry is known to be there, before any file is written.
+     * @param destination Where each file in the entry goes, by name.
+     * @return Whether there was an entry.
+     */
+    boolean restore(
+            String key,
+            TaskGraph.Action beforeRestoring,
+            Function<String, Path> destination
+    ) throws Exception {
+        var temp = Files.createTempFile("jproject-build-cache", ".zip");
+        try {
+            if (!this.storage.get(key, temp)) {
+                Timings.count("build cache misses", 1);
+                return false;
+            }
+
+            try (var zip = new ZipFile(temp.toFile())) {
+                beforeRestoring.run();
+                for (var entry : Collections.list(zip.entries())) {
+                    var file = destination.apply(entry.getName());
+                    Files.createDirectories(file.toAbsolutePath().getParent());
+                    try (var in = zip.getInputStream(entry)) {
+                        Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+            Timings.count("build cache hits", 1);
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Stores the given files, by name, as the entry for the key. Failing to store an entry only
+     * means it won't be there next time, so that is not an error.
+     */
+    void store(String key, Map<String, Path> files) {
+        try {
+            var temp = Files.createTempFile("jproject-build-cache", ".zip");
+            try {
+                try (var zip = new ZipOutputStream(Files.newOutputStream(temp))) {
+                    // Storing happens after every full compile, so it has to be quick more than it has to be small.
+                    zip.setLevel(Deflater.BEST_SPEED);
+                    for (var file : new TreeMap<>(files).entrySet()) {
+                        zip.putNextEntry(new ZipEntry(file.getKey()));
+                        Files.copy(file.getValue(), zip);
+                        zip.closeEntry();
+                    }
+                }
+                this.storage.put(key, temp);
+                this.storage.evict(this.maxBytes, this.maxAge);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Could not store build cache entry: " + e.getMessage());
+        }
+    }
+}
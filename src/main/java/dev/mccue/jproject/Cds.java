@@ -0,0 +1,52 @@
+package dev.mccue.jproject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Dynamic AppCDS archives, which let a JVM map in classes that an earlier run already
+ * loaded and verified instead of loading them from jars again.
+ *
+ * <p>An archive is only good for the exact class path and JVM it was dumped with, so each
+ * one is named after a key covering both. The first run with a new key dumps an archive
+ * when it exits and every run after that uses it.
+ */
+final class Cds {
+    private Cds() {}
+
+    /**
+     * @return A key for an archive made from the given parts and the JVM running right now.
+     */
+    static String key(String... parts) {
+        return Hashes.sha256(
+                String.join("\0", parts)
+                        + "\0" + Runtime.version()
+                        + "\0" + System.getProperty("java.home")
+        );
+    }
+
+    /**
+     * @return The options to pass to the JVM to use the archive for the given key, or to
+     * dump one if there isn't one yet. Archives with the same name but a different key are
+     * deleted, since nothing will use them again.
+     */
+    static List<String> jvmOptions(Path directory, String name, String key) throws IOException {
+        var archive = directory.resolve(name + "-" + key + ".jsa");
+        if (Files.isRegularFile(archive)) {
+            return List.of("-XX:SharedArchiveFile=" + archive);
+        }
+
+        Files.createDirectories(directory);
+        try (var archives = Files.list(directory)) {
+            for (var stale : (Iterable<Path>) archives::iterator) {
+                var fileName = stale.getFileName().toString();
+                if (fileName.startsWith(name + "-") && fileName.endsWith(".jsa")) {
+                    Files.deleteIfExists(stale);
+                }
+            }
+        }
+        return List.of("-XX:ArchiveClassesAtExit=" + archive);
+    }
+}
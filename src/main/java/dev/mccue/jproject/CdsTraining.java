@@ -0,0 +1,79 @@
+package dev.mccue.jproject;
+
+import dev.mccue.jproject.model.ApplicationModule;
+import dev.mccue.jproject.model.AvailableDuring;
+import dev.mccue.jproject.model.Basis;
+import dev.mccue.jproject.model.Resolver;
+import org.apache.commons.io.FileUtils;
+
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * A training run for jproject's own CDS archive, run by the launcher script with
+ * {@code -XX:ArchiveClassesAtExit}.
+ *
+ * <p>It goes through the same code as the common commands on a throwaway project so that
+ * the classes they need, Clojure and tools.deps included, end up in the archive. Nothing
+ * here touches the network.
+ */
+public final class CdsTraining {
+    private CdsTraining() {}
+
+    public static void main(String[] args) throws Exception {
+        var project = Files.createTempDirectory("jproject-cds-training");
+        try {
+            var toml = project.resolve("jproject.toml");
+            Files.writeString(toml, """
+                    [application]
+                    main-class = "example.Main"
+
+                    [dependencies]
+
+                    [test-only-dependencies]
+
+                    [bench-only-dependencies]
+                    """);
+            var module = ApplicationModule.fromFile(toml);
+
+            try {
+                var paths = new ProjectPaths(module, new PathCache(project.resolve(Conventions.PATH_CACHE_DIR)));
+                for (var availableDuring : AvailableDuring.values()) {
+                    paths.path(availableDuring);
+                }
+                Basis.usingMavenCentral()
+                        .resolver(Resolver.toolsDeps())
+                        .build()
+                        .graph();
+            } catch (RuntimeException | LinkageError e) {
+                // Whatever did get loaded is still worth archiving.
+                System.err.println("Could not load tools.deps for training: " + e);
+            }
+
+            var sources = project.resolve("src");
+            Files.createDirectories(sources.resolve("example"));
+            Files.writeString(sources.resolve("example/Main.java"), """
+                    package example;
+
+                    public final class Main {
+                        public static void main(String[] args) {
+                            System.out.println("Hello, world");
+                        }
+                    }
+                    """);
+            var classes = project.resolve("target/classes");
+            new IncrementalCompiler(
+                    sources,
+                    classes,
+                    project.resolve("target/generated-sources"),
+                    project.resolve("target/compile-state")
+            ).compile(List.of(), List.of(), List.of("-g"));
+
+            new JarWriter(JarWriter.manifest("example.Main"))
+                    .addDirectory(classes)
+                    .write(project.resolve("target/app.jar"));
+        } finally {
+            FileUtils.deleteDirectory(project.toFile());
+        }
+    }
+}
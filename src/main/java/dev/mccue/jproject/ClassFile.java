@@ -0,0 +1,155 @@
+package dev.mccue.jproject;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * The handful of facts jproject needs to know about a compiled class: its name,
+ * the source file it says it came from, every other class it refers to and the
+ * compile time constants it declares.
+ *
+ * <p>This only reads as much of the class file format as it needs to, so it
+ * should stay cheap enough to run over every class in a project.
+ *
+ * @param name The internal name of the class, like {@code dev/mccue/jproject/Main}
+ * @param sourceFile The value of the SourceFile attribute, or null if there was none.
+ * @param references The internal names of every class referenced by this one.
+ * @param constants The compile time constants declared by this class, which other
+ *                  classes might have inlined, as {@code name=value} pairs.
+ */
+record ClassFile(String name, String sourceFile, Set<String> references, List<String> constants) {
+    private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([^;\\[<>:.]+)[;<]");
+
+    ClassFile {
+        references = Set.copyOf(references);
+        constants = List.copyOf(constants);
+    }
+
+    static ClassFile read(Path path) throws IOException {
+        return read(Files.readAllBytes(path));
+    }
+
+    static ClassFile read(byte[] bytes) throws IOException {
+        var in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor_version
+        in.readUnsignedShort(); // major_version
+
+        var constantPoolCount = in.readUnsignedShort();
+        var tags = new int[constantPoolCount];
+        var utf8 = new String[constantPoolCount];
+        var classIndexes = new int[constantPoolCount];
+        var values = new Object[constantPoolCount];
+        for (int i = 1; i < constantPoolCount; i++) {
+            var tag = in.readUnsignedByte();
+            tags[i] = tag;
+            switch (tag) {
+                case 1 -> utf8[i] = in.readUTF();
+                case 3 -> values[i] = in.readInt();
+                case 4 -> values[i] = in.readFloat();
+                case 5 -> {
+                    values[i] = in.readLong();
+                    i++;
+                }
+                case 6 -> {
+                    values[i] = in.readDouble();
+                    i++;
+                }
+                case 7 -> classIndexes[i] = in.readUnsignedShort();
+                case 8 -> values[i] = in.readUnsignedShort();
+                case 16, 19, 20 -> in.readUnsignedShort();
+                case 15 -> {
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                }
+                case 9, 10, 11, 12, 17, 18 -> in.readInt();
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        in.readUnsignedShort(); // access_flags
+        var name = utf8[classIndexes[in.readUnsignedShort()]];
+        in.readUnsignedShort(); // super_class
+        var interfacesCount = in.readUnsignedShort();
+        in.skipNBytes(2L * interfacesCount);
+
+        var constants = new ArrayList<String>();
+        var fieldsCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldsCount; i++) {
+            in.readUnsignedShort(); // access_flags
+            var fieldName = utf8[in.readUnsignedShort()];
+            in.readUnsignedShort(); // descriptor_index
+            var attributesCount = in.readUnsignedShort();
+            for (int j = 0; j < attributesCount; j++) {
+                var attributeName = utf8[in.readUnsignedShort()];
+                var length = in.readInt();
+                if ("ConstantValue".equals(attributeName)) {
+                    var valueIndex = in.readUnsignedShort();
+                    var value = tags[valueIndex] == 8
+                            ? utf8[(Integer) values[valueIndex]]
+                            : values[valueIndex];
+                    constants.add(fieldName + "=" + value);
+                }
+                else {
+                    in.skipNBytes(length);
+                }
+            }
+        }
+
+        var methodsCount = in.readUnsignedShort();
+        for (int i = 0; i < methodsCount; i++) {
+            in.skipNBytes(6);
+            var attributesCount = in.readUnsignedShort();
+            for (int j = 0; j < attributesCount; j++) {
+                in.readUnsignedShort();
+                in.skipNBytes(Integer.toUnsignedLong(in.readInt()));
+            }
+        }
+
+        String sourceFile = null;
+        var attributesCount = in.readUnsignedShort();
+        for (int i = 0; i < attributesCount; i++) {
+            var attributeName = utf8[in.readUnsignedShort()];
+            var length = in.readInt();
+            if ("SourceFile".equals(attributeName)) {
+                sourceFile = utf8[in.readUnsignedShort()];
+            }
+            else {
+                in.skipNBytes(Integer.toUnsignedLong(length));
+            }
+        }
+
+        var references = new HashSet<String>();
+        for (int i = 1; i < constantPoolCount; i++) {
+            if (classIndexes[i] != 0) {
+                addReference(references, utf8[classIndexes[i]]);
+            }
+            else if (utf8[i] != null) {
+                var matcher = DESCRIPTOR_CLASS.matcher(utf8[i]);
+                while (matcher.find()) {
+                    references.add(matcher.group(1));
+                }
+            }
+        }
+        references.remove(name);
+
+        return new ClassFile(name, sourceFile, references, constants);
+    }
+
+    private static void addReference(Set<String> references, String className) {
+        if (className.startsWith("[")) {
+            var matcher = DESCRIPTOR_CLASS.matcher(className);
+            while (matcher.find()) {
+                references.add(matcher.group(1));
+            }
+        }
+        else {
+            references.add(className);
+        }
+    }
+}
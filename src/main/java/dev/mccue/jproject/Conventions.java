@@ -3,6 +3,7 @@ package dev.mccue.jproject;
 import dev.mccue.jproject.model.MavenDependency;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 
 public final class Conventions {
@@ -61,6 +62,51 @@ public final class Conventions {
      */
     public static final Path BENCH_GENERATED_SOURCES_DIR = Path.of(TARGET_DIR.toString(), "test", "bench", "generated-sources");
 
+    /**
+     * The file where what is needed to incrementally recompile "src" is kept.
+     */
+    public static final Path SRC_COMPILE_STATE_PATH = Path.of(TARGET_DIR.toString(), "src", "compile-state");
+
+    /**
+     * The file where what was last copied from "src" into its classes directory is kept.
+     */
+    public static final Path SRC_RESOURCE_STATE_PATH = Path.of(TARGET_DIR.toString(), "src", "resource-state");
+
+    /**
+     * The file where what is needed to incrementally recompile "test" is kept.
+     */
+    public static final Path TEST_COMPILE_STATE_PATH = Path.of(TARGET_DIR.toString(), "test", "compile-state");
+
+    /**
+     * The file where what is needed to incrementally recompile "bench" is kept.
+     */
+    public static final Path BENCH_COMPILE_STATE_PATH = Path.of(TARGET_DIR.toString(), "test", "bench-compile-state");
+
+    /**
+     * Where what was seen the last time the project's files were walked is kept.
+     */
+    public static final Path SOURCE_INDEX_PATH = Path.of(TARGET_DIR.toString(), "source-index");
+
+    /**
+     * The hash of every source file as it was right after "fmt" last formatted it.
+     */
+    public static final Path FMT_CACHE_PATH = Path.of(TARGET_DIR.toString(), "fmt-cache.properties");
+
+    /**
+     * Where the JSON results of every "bench" run are kept.
+     */
+    public static final Path BENCH_HISTORY_DIR = Path.of(TARGET_DIR.toString(), "bench-history");
+
+    /**
+     * Where a "bench" run writes its results until it finishes and they are moved into the history.
+     */
+    public static final Path BENCH_RUNNING_PATH = Path.of(TARGET_DIR.toString(), "bench-running.json");
+
+    /**
+     * Where the report from "--timings" is written.
+     */
+    public static final Path TIMINGS_REPORT_PATH = Path.of(TARGET_DIR.toString(), "timings.json");
+
     /**
      *
      */
@@ -73,6 +119,39 @@ public final class Conventions {
 
 
     public static final Path BENCH_JAR_FILE = Path.of(JAR_DIR.toString(), "bench.jar");
+
+    /**
+     * Where the merged report of the last test run is written, along with what each test
+     * worker was given and reported.
+     */
+    public static final Path TEST_REPORT_DIR = Path.of(TARGET_DIR.toString(), "test", "report");
+
+    /**
+     * How long each test class took the last time it ran, which is used to balance shards.
+     */
+    public static final Path TEST_DURATIONS_PATH = Path.of(TARGET_DIR.toString(), "test", "durations.properties");
+
+    /**
+     * The file where the classes tested by the last test run are remembered, so that
+     * "test --affected" can tell which tests could have been affected since.
+     */
+    public static final Path TEST_IMPACT_STATE_PATH = Path.of(TARGET_DIR.toString(), "test", "impact-state");
+
+    /**
+     * Where AppCDS archives for "run --cds" are kept.
+     */
+    public static final Path CDS_DIR = Path.of(TARGET_DIR.toString(), "cds");
+
+    /**
+     * The jar with the application and every one of its runtime dependencies in it.
+     */
+    public static final Path UBER_JAR_FILE = Path.of(JAR_DIR.toString(), "app-standalone.jar");
+
+    /**
+     * Where "image" puts the trimmed down runtime with the application in it.
+     */
+    public static final Path IMAGE_DIR = Path.of(TARGET_DIR.toString(), "image");
+
     /**
      * The directory where any tool specific files will be stored.
      */
@@ -97,14 +176,6 @@ public final class Conventions {
             )
     );
 
-    public static final List<MavenDependency> GOOGLE_JAVA_FORMAT_DEPENDENCIES = List.of(
-            new MavenDependency(
-                    "com.google.googlejavaformat",
-                    "google-java-format",
-                    "1.13.0"
-            )
-    );
-
     /**
      * The path where the pre-packaged JUnit test runner jar will be expanded.
      */
@@ -113,6 +184,14 @@ public final class Conventions {
             "google-java-format-1.14.0-all-deps.jar"
     );
 
+    /**
+     * Where the test worker is copied out to, so it can run without the rest of jproject.
+     */
+    public static final Path TEST_WORKER_DIRECTORY = Path.of(
+            TOOL_DIRECTORY.toString(),
+            "test-worker"
+    );
+
     /**
      * The path where the pre-packaged Jacoco ant plugin will be placed.
      */
@@ -121,12 +200,76 @@ public final class Conventions {
             "org.jacoco.agent-0.8.7.jar"
     );
 
+    /**
+     * The unix domain socket the background daemon listens on.
+     */
+    public static final Path DAEMON_SOCKET_PATH = Path.of(
+            TOOL_DIRECTORY.toString(),
+            "daemon.sock"
+    );
+
+    /**
+     * Where the output of the background daemon goes.
+     */
+    public static final Path DAEMON_LOG_PATH = Path.of(
+            TOOL_DIRECTORY.toString(),
+            "daemon.log"
+    );
+
+    /**
+     * Where compiled classes are cached between builds, keyed by everything that went into them.
+     */
+    public static final Path BUILD_CACHE_DIR = Path.of(
+            TOOL_DIRECTORY.toString(),
+            "build-cache"
+    );
+
+    /**
+     * How big the build cache can get before the least recently used entries are evicted.
+     */
+    public static final long BUILD_CACHE_MAX_BYTES = 2L * 1024 * 1024 * 1024;
+
+    /**
+     * How long an entry in the build cache can go unused before it is evicted.
+     */
+    public static final Duration BUILD_CACHE_MAX_AGE = Duration.ofDays(30);
+
+    /**
+     * How long the background daemon will sit without any requests before shutting down.
+     */
+    public static final Duration DAEMON_IDLE_TIMEOUT = Duration.ofHours(3);
+
+    /**
+     * How long "watch" waits for things to stop changing before starting a build.
+     */
+    public static final Duration WATCH_QUIET_PERIOD = Duration.ofMillis(200);
+
     /**
      * Path to search for jproject.toml
      */
     public static final Path JPROJECT_TOML_PATH =
             Path.of("./jproject.toml");
 
+    /**
+     * Path of the lockfile written by "jproject lock".
+     */
+    public static final Path JPROJECT_LOCK_PATH =
+            Path.of("./jproject.lock");
+
+    /**
+     * The local maven repository, where resolved jars end up.
+     */
+    public static final Path MAVEN_LOCAL_REPOSITORY = Path.of(
+            System.getProperty("user.home"),
+            ".m2",
+            "repository"
+    );
+
+    /**
+     * Directory where resolved paths are cached, one file per basis.
+     */
+    public static final Path PATH_CACHE_DIR = Path.of(".path-cache");
+
     /**
      * Directory to download dependencies into
      */
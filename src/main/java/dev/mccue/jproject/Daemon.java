@@ -0,0 +1,282 @@
+package dev.mccue.jproject;
+
+import dev.mccue.jproject.model.ApplicationModule;
+import dev.mccue.jproject.model.AvailableDuring;
+import dev.mccue.jproject.model.Basis;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dev.mccue.jproject.Conventions.*;
+
+/**
+ * An opt-in background process which keeps Clojure and tools.deps loaded so that
+ * resolving a path doesn't have to pay for starting them up every time.
+ *
+ * <p>It is started with {@code jproject daemon start} and listens on a unix domain
+ * socket in the tool directory. While it is running, the CLI asks it for the path of
+ * each scope instead of resolving anything itself. It remembers the parsed jproject.toml
+ * and the path cache of every project it has seen, and exits on its own once it has been
+ * idle for {@link Conventions#DAEMON_IDLE_TIMEOUT}.
+ */
+final class Daemon {
+    private static final byte OK = 0;
+    private static final byte ERROR = 1;
+
+    private record LoadedModule(FileTime lastModified, ApplicationModule module, ProjectPaths paths) {}
+
+    private final Map<Path, LoadedModule> modules;
+    private final Map<Path, PathCache> pathCaches;
+    private final AtomicLong lastActive;
+    private final AtomicInteger activeRequests;
+
+    private Daemon() {
+        this.modules = new ConcurrentHashMap<>();
+        this.pathCaches = new ConcurrentHashMap<>();
+        this.lastActive = new AtomicLong(System.currentTimeMillis());
+        this.activeRequests = new AtomicInteger();
+    }
+
+    /**
+     * Starts a daemon in the background, unless one is already running.
+     */
+    static void start() throws Exception {
+        if (ping()) {
+            System.err.println("daemon is already running");
+            return;
+        }
+        Files.createDirectories(TOOL_DIRECTORY);
+        var self = Path.of(Daemon.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp",
+                self.toString(),
+                Daemon.class.getName()
+        )
+                .redirectErrorStream(true)
+                .redirectOutput(DAEMON_LOG_PATH.toFile())
+                .start();
+    }
+
+    /**
+     * Asks a running daemon to shut down.
+     */
+    static void stop() throws IOException {
+        try (var channel = connect()) {
+            var out = new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeUTF("stop");
+            out.flush();
+            readResponse(channel);
+        } catch (IOException e) {
+            System.err.println("daemon is not running");
+        }
+    }
+
+    /**
+     * @return Whether a daemon is running and answering requests.
+     */
+    static boolean ping() {
+        if (!Files.exists(DAEMON_SOCKET_PATH)) {
+            return false;
+        }
+        try (var channel = connect()) {
+            var out = new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeUTF("ping");
+            out.flush();
+            readResponse(channel);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Asks a running daemon for the path of the given scope of the project in the
+     * given directory.
+     *
+     * @return The path, or empty if there is no daemon to ask or it couldn't answer, in which
+     * case the caller should resolve the path itself.
+     */
+    static Optional<String> path(Path projectDirectory, AvailableDuring availableDuring) {
+        if (!Files.exists(DAEMON_SOCKET_PATH)) {
+            return Optional.empty();
+        }
+        final SocketChannel channel;
+        try {
+            channel = connect();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        try (channel) {
+            var out = new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeUTF("path");
+            out.writeUTF(projectDirectory.toAbsolutePath().toString());
+            out.writeUTF(availableDuring.name());
+            out.flush();
+            return Optional.of(readResponse(channel));
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Could not get the path from the daemon, resolving it here instead: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static SocketChannel connect() throws IOException {
+        var channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(DAEMON_SOCKET_PATH));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    private static String readResponse(SocketChannel channel) throws IOException {
+        var in = new DataInputStream(Channels.newInputStream(channel));
+        var status = in.readByte();
+        var body = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+        if (status != OK) {
+            throw new IllegalStateException("daemon: " + body);
+        }
+        return body;
+    }
+
+    private static void writeResponse(DataOutputStream out, byte status, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(status);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+
+    private String resolve(Path projectDirectory, AvailableDuring availableDuring) throws Exception {
+        var tomlPath = projectDirectory.resolve(JPROJECT_TOML_PATH).normalize();
+        var lastModified = Files.getLastModifiedTime(tomlPath);
+        var loaded = this.modules.get(tomlPath);
+        if (loaded == null || !loaded.lastModified().equals(lastModified)) {
+            var module = ApplicationModule.fromFile(tomlPath);
+            var pathCache = this.pathCaches.computeIfAbsent(
+                    projectDirectory,
+                    directory -> new PathCache(directory.resolve(PATH_CACHE_DIR))
+            );
+            loaded = new LoadedModule(lastModified, module, new ProjectPaths(module, pathCache));
+            this.modules.put(tomlPath, loaded);
+        }
+
+        return loaded.paths().path(availableDuring);
+    }
+
+    /**
+     * @return Whether the daemon should keep running.
+     */
+    private boolean handle(SocketChannel channel) throws IOException {
+        var in = new DataInputStream(Channels.newInputStream(channel));
+        var out = new DataOutputStream(Channels.newOutputStream(channel));
+        var command = in.readUTF();
+        switch (command) {
+            case "ping" -> writeResponse(out, OK, "pong");
+            case "stop" -> {
+                writeResponse(out, OK, "stopping");
+                return false;
+            }
+            case "path" -> {
+                var projectDirectory = Path.of(in.readUTF());
+                var availableDuring = AvailableDuring.valueOf(in.readUTF());
+                try {
+                    writeResponse(out, OK, resolve(projectDirectory, availableDuring));
+                } catch (Exception e) {
+                    writeResponse(out, ERROR, String.valueOf(e.getMessage()));
+                }
+            }
+            default -> writeResponse(out, ERROR, "unknown command " + command);
+        }
+        return true;
+    }
+
+    private void serve() throws IOException {
+        Files.deleteIfExists(DAEMON_SOCKET_PATH);
+        var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(DAEMON_SOCKET_PATH));
+
+        var workers = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "jproject-daemon-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "jproject-daemon-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleAtFixedRate(() -> {
+            var idleFor = System.currentTimeMillis() - this.lastActive.get();
+            if (this.activeRequests.get() == 0 && idleFor > DAEMON_IDLE_TIMEOUT.toMillis()) {
+                try {
+                    server.close();
+                } catch (IOException e) {
+                    // Exiting anyway
+                }
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+
+        // Pay for loading tools.deps up front rather than on the first request.
+        Basis.builder().build().path();
+
+        try {
+            while (true) {
+                var channel = server.accept();
+                this.activeRequests.incrementAndGet();
+                workers.submit(() -> {
+                    try (channel) {
+                        if (!handle(channel)) {
+                            server.close();
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    } finally {
+                        this.lastActive.set(System.currentTimeMillis());
+                        this.activeRequests.decrementAndGet();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            // The server socket was closed, either by a stop request or for being idle.
+        } finally {
+            Files.deleteIfExists(DAEMON_SOCKET_PATH);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Daemon().serve();
+        System.exit(0);
+    }
+
+    static void command(List<String> args) throws Exception {
+        var subcommand = args.isEmpty() ? "status" : args.get(0);
+        switch (subcommand) {
+            case "start" -> start();
+            case "stop" -> stop();
+            case "status" -> System.out.println(ping() ? "running" : "not running");
+            default -> {
+                System.err.println("unknown daemon command: " + subcommand);
+                System.exit(1);
+            }
+        }
+    }
+}
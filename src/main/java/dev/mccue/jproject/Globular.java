@@ -6,12 +6,7 @@ import java.util.List;
 
 public class Globular {
     static List<Path> glob(String pattern) throws IOException {
-        var matcher = FileSystems
-                .getDefault()
-                .getPathMatcher("glob:" + pattern);
-        try (var files = Files.walk(Path.of("."))) {
-            return files.filter(matcher::matches).toList();
-        }
+        return SourceIndex.load().glob(pattern);
     }
 
     public static void main(String[] args) throws IOException {
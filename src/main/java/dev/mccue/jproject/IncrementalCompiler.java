@@ -0,0 +1,451 @@
+package dev.mccue.jproject;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Compiles a directory of sources into a directory of classes, but only recompiles the
+ * sources which changed since the last compilation along with every source that depends
+ * on them.
+ *
+ * <p>What is needed to figure that out - a fingerprint of every source, the classes each
+ * one produced and the classes those refer to - is kept in a state file under target.
+ * If that file is missing or was written for different compiler options, everything is
+ * recompiled. A compiler which is used more than once keeps the state in memory as well, so
+ * only the first compilation has to read it.
+ *
+ * <p>Before anything is compiled the {@link BuildCache} is checked for output made from exactly
+ * the same inputs, and after a full compilation its output is put there. Incremental
+ * compilations aren't stored, since they are usually quicker than storing would be.
+ */
+final class IncrementalCompiler {
+    private final Path sourceDir;
+    private final Path classesDir;
+    private final Path generatedSourcesDir;
+    private final Path stateFile;
+
+    private State state;
+
+    IncrementalCompiler(Path sourceDir, Path classesDir, Path generatedSourcesDir, Path stateFile) {
+        this.sourceDir = sourceDir;
+        this.classesDir = classesDir;
+        this.generatedSourcesDir = generatedSourcesDir;
+        this.stateFile = stateFile;
+    }
+
+    /**
+     * What we remember about a single source file.
+     *
+     * @param hash The hash of the source's contents when it was compiled.
+     * @param classes The internal names of the classes compiled from the source.
+     * @param references The internal names of every class those classes refer to.
+     */
+    private record SourceRecord(String hash, Set<String> classes, Set<String> references)
+            implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * What we remember about a class on the class path which came from somewhere else,
+     * like the main classes for a test compilation.
+     */
+    private record UpstreamRecord(String hash, List<String> constants) implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    private record State(
+            String configuration,
+            boolean generatesSources,
+            Map<String, SourceRecord> sources,
+            Map<String, List<String>> constants,
+            Map<String, UpstreamRecord> upstream
+    ) implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Brings the classes directory up to date with the sources.
+     *
+     * @param classPath Directories or jars to put on the class path, in addition
+     *                  to the classes directory itself.
+     * @param modulePath Directories or jars to put on the module path and the
+     *                   annotation processor module path.
+     * @param options Any other options for javac.
+     * @return Whether compilation succeeded. If there was nothing to compile, it did.
+     */
+    boolean compile(List<Path> classPath, List<Path> modulePath, List<String> options) throws IOException {
+        return compile(classPath, modulePath, options, false);
+    }
+
+    private boolean compile(
+            List<Path> classPath,
+            List<Path> modulePath,
+            List<String> options,
+            boolean forceFull
+    ) throws IOException {
+        var index = SourceIndex.load();
+        var sources = new TreeMap<String, String>();
+        index.files(this.sourceDir, ".java")
+                .forEach(file -> sources.put(file.toString(), index.sha256(file)));
+
+        var configuration = Hashes.sha256(
+                String.join("\0", options) + "\0" + classPath + "\0" + modulePath
+        );
+
+        var previous = forceFull ? null : readState();
+        var upstream = scanUpstream(classPath, previous == null ? Map.of() : previous.upstream());
+
+        var full = previous == null
+                || !previous.configuration().equals(configuration)
+                || sources.keySet().stream().anyMatch(source -> source.endsWith("module-info.java"));
+
+        var changedClasses = new HashSet<String>();
+        if (!full) {
+            for (var entry : previous.upstream().entrySet()) {
+                var current = upstream.get(entry.getKey());
+                if (current == null || !current.hash().equals(entry.getValue().hash())) {
+                    changedClasses.add(entry.getKey());
+                    // Constants are inlined at their use sites, so nothing would point back at them.
+                    if (current == null || !current.constants().equals(entry.getValue().constants())) {
+                        full = true;
+                    }
+                }
+            }
+        }
+
+        var dirty = new TreeSet<String>();
+        var records = new TreeMap<String, SourceRecord>();
+        var constants = new HashMap<String, List<String>>();
+        if (full) {
+            dirty.addAll(sources.keySet());
+            deleteClasses(this.classesDir);
+            FileUtils.deleteDirectory(this.generatedSourcesDir.toFile());
+        }
+        else {
+            previous.sources().forEach((source, record) -> {
+                if (!record.hash().equals(sources.get(source))) {
+                    changedClasses.addAll(record.classes());
+                    if (sources.containsKey(source)) {
+                        dirty.add(source);
+                    }
+                }
+            });
+            sources.keySet().forEach(source -> {
+                if (!previous.sources().containsKey(source)) {
+                    dirty.add(source);
+                }
+            });
+
+            if (!dirty.isEmpty() || !changedClasses.isEmpty()) {
+                if (previous.generatesSources()) {
+                    // Annotation processors can't tell us what they generated from what,
+                    // so the only safe option is to start over.
+                    return compile(classPath, modulePath, options, true);
+                }
+            }
+
+            var dependents = new HashMap<String, List<String>>();
+            previous.sources().forEach((source, record) -> record.references().forEach(reference ->
+                    dependents.computeIfAbsent(reference, __ -> new ArrayList<>()).add(source)
+            ));
+            var queue = new ArrayDeque<>(changedClasses);
+            while (!queue.isEmpty()) {
+                for (var source : dependents.getOrDefault(queue.poll(), List.of())) {
+                    if (sources.containsKey(source) && dirty.add(source)) {
+                        queue.addAll(previous.sources().get(source).classes());
+                    }
+                }
+            }
+
+            for (var entry : previous.sources().entrySet()) {
+                var source = entry.getKey();
+                if (dirty.contains(source) || !sources.containsKey(source)) {
+                    for (var className : entry.getValue().classes()) {
+                        Files.deleteIfExists(this.classesDir.resolve(className + ".class"));
+                    }
+                }
+                else {
+                    records.put(source, entry.getValue());
+                    for (var className : entry.getValue().classes()) {
+                        constants.put(className, previous.constants().getOrDefault(className, List.of()));
+                    }
+                }
+            }
+        }
+
+        if (dirty.isEmpty()) {
+            writeState(new State(configuration, false, records, constants, upstream));
+            return true;
+        }
+
+        var cacheKey = cacheKey(configuration, sources, upstream, modulePath);
+        if (restoreFromCache(cacheKey)) {
+            return true;
+        }
+
+        var fullClassPath = new ArrayList<Path>();
+        fullClassPath.add(this.classesDir);
+        fullClassPath.addAll(classPath);
+        var javacOptions = new ArrayList<>(options);
+        javacOptions.add("-implicit:none");
+
+        var dirtyByPath = new HashMap<Path, String>();
+        dirty.forEach(source -> dirtyByPath.put(Path.of(source).toAbsolutePath().normalize(), source));
+        var outputs = new HashMap<String, String>();
+        var success = Javac.compile(
+                new Javac.Options(
+                        fullClassPath,
+                        modulePath,
+                        this.classesDir,
+                        this.generatedSourcesDir,
+                        javacOptions
+                ),
+                dirty.stream().map(Path::of).toList(),
+                (className, sourcePath) -> {
+                    var source = dirtyByPath.get(sourcePath.toAbsolutePath().normalize());
+                    if (source != null) {
+                        outputs.put(className, source);
+                    }
+                }
+        );
+        if (!success) {
+            // Whatever was dirty is left out, so it will be compiled again next time.
+            writeState(new State(configuration, false, records, constants, upstream));
+            return false;
+        }
+
+        var classesBySource = new HashMap<String, Set<String>>();
+        var referencesBySource = new HashMap<String, Set<String>>();
+        var constantsChanged = false;
+        for (var output : outputs.entrySet()) {
+            var className = output.getKey();
+            var source = output.getValue();
+            var classFile = ClassFile.read(this.classesDir.resolve(className + ".class"));
+            classesBySource.computeIfAbsent(source, __ -> new TreeSet<>()).add(className);
+            referencesBySource.computeIfAbsent(source, __ -> new TreeSet<>()).addAll(classFile.references());
+            constants.put(className, classFile.constants());
+
+            if (previous != null
+                    && previous.constants().containsKey(className)
+                    && !previous.constants().get(className).equals(classFile.constants())) {
+                constantsChanged = true;
+            }
+        }
+
+        if (constantsChanged && !full) {
+            return compile(classPath, modulePath, options, true);
+        }
+
+        for (var source : dirty) {
+            records.put(source, new SourceRecord(
+                    sources.get(source),
+                    classesBySource.getOrDefault(source, Set.of()),
+                    referencesBySource.getOrDefault(source, Set.of())
+            ));
+        }
+
+        var generatesSources = false;
+        if (Files.isDirectory(this.generatedSourcesDir)) {
+            try (var generated = Files.walk(this.generatedSourcesDir)) {
+                generatesSources = generated.anyMatch(Files::isRegularFile);
+            }
+        }
+        writeState(new State(configuration, generatesSources, records, constants, upstream));
+        // Storing zips up every class, which would cost a small incremental compile, like the
+        // ones watch makes on every change, far more than the compile itself.
+        if (full) {
+            storeInCache(cacheKey);
+        }
+        return true;
+    }
+
+    /**
+     * @return A hash of everything the output of a compilation depends on: the options and paths,
+     * the JDK doing the compiling, every source, every class on the class path, and every jar on
+     * the module path. Jars are told apart by their size and modification time rather than by
+     * reading them.
+     */
+    private static String cacheKey(
+            String configuration,
+            Map<String, String> sources,
+            Map<String, UpstreamRecord> upstream,
+            List<Path> modulePath
+    ) throws IOException {
+        var key = new StringBuilder();
+        key.append("configuration ").append(configuration).append('\n');
+        key.append("jdk ").append(System.getProperty("java.vm.vendor")).append(' ').append(Runtime.version()).append('\n');
+        sources.forEach((source, hash) -> key.append("source ").append(source).append(' ').append(hash).append('\n'));
+        new TreeMap<>(upstream).forEach((className, record) ->
+                key.append("upstream ").append(className).append(' ').append(record.hash()).append('\n'));
+        for (var entry : modulePath) {
+            if (Files.isRegularFile(entry)) {
+                key.append("module ").append(entry)
+                        .append(' ').append(Files.size(entry))
+                        .append(' ').append(Files.getLastModifiedTime(entry).toMillis())
+                        .append('\n');
+            }
+        }
+        return Hashes.sha256(key.toString());
+    }
+
+    private static final String CLASSES_PREFIX = "classes/";
+    private static final String GENERATED_SOURCES_PREFIX = "generated-sources/";
+    private static final String STATE_NAME = "state";
+
+    /**
+     * Replaces the classes and generated sources with the ones in the cache entry for the key,
+     * along with the state that goes with them.
+     *
+     * @return Whether there was an entry.
+     */
+    private boolean restoreFromCache(String key) throws IOException {
+        var cache = BuildCache.local();
+        if (cache.isEmpty()) {
+            return false;
+        }
+        try {
+            var restored = Timings.time("restore build cache", () -> cache.get().restore(
+                    key,
+                    () -> {
+                        deleteClasses(this.classesDir);
+                        FileUtils.deleteDirectory(this.generatedSourcesDir.toFile());
+                    },
+                    name -> {
+                        if (name.equals(STATE_NAME)) {
+                            return this.stateFile;
+                        }
+                        else if (name.startsWith(CLASSES_PREFIX)) {
+                            return within(this.classesDir, name.substring(CLASSES_PREFIX.length()));
+                        }
+                        else if (name.startsWith(GENERATED_SOURCES_PREFIX)) {
+                            return within(this.generatedSourcesDir, name.substring(GENERATED_SOURCES_PREFIX.length()));
+                        }
+                        throw new IllegalStateException("Unexpected build cache entry: " + name);
+                    }
+            ));
+            if (restored) {
+                // Read back from the state file the entry came with.
+                this.state = null;
+            }
+            return restored;
+        } catch (IOException | RuntimeException e) {
+            // Some of the entry may have been written, so whatever happens next needs a clean start.
+            System.err.println("Could not restore build cache entry: " + e.getMessage());
+            Files.deleteIfExists(this.stateFile);
+            this.state = null;
+            return false;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Path within(Path directory, String relative) {
+        var file = directory.resolve(relative).normalize();
+        if (!file.startsWith(directory.normalize())) {
+            throw new IllegalStateException("Build cache entry points outside of " + directory + ": " + relative);
+        }
+        return file;
+    }
+
+    /**
+     * Puts every class, every generated source and the state in the cache under the key.
+     */
+    private void storeInCache(String key) throws IOException {
+        var cache = BuildCache.local();
+        if (cache.isEmpty()) {
+            return;
+        }
+        var files = new HashMap<String, Path>();
+        files.put(STATE_NAME, this.stateFile);
+        for (var entry : List.of(
+                Map.entry(CLASSES_PREFIX, this.classesDir),
+                Map.entry(GENERATED_SOURCES_PREFIX, this.generatedSourcesDir)
+        )) {
+            if (!Files.isDirectory(entry.getValue())) {
+                continue;
+            }
+            try (var walk = Files.walk(entry.getValue())) {
+                walk.filter(Files::isRegularFile)
+                        .filter(file -> !entry.getKey().equals(CLASSES_PREFIX) || file.toString().endsWith(".class"))
+                        .forEach(file -> files.put(
+                                entry.getKey() + entry.getValue().relativize(file).toString().replace(File.separatorChar, '/'),
+                                file
+                        ));
+            }
+        }
+        Timings.time("store build cache", () -> cache.get().store(key, files));
+    }
+
+    private static Map<String, UpstreamRecord> scanUpstream(
+            List<Path> classPath,
+            Map<String, UpstreamRecord> previous
+    ) throws IOException {
+        var upstream = new HashMap<String, UpstreamRecord>();
+        for (var entry : classPath) {
+            if (!Files.isDirectory(entry)) {
+                continue;
+            }
+            try (var files = Files.walk(entry)) {
+                for (var classFilePath : (Iterable<Path>) files.filter(file -> file.toString().endsWith(".class"))::iterator) {
+                    var className = internalName(entry, classFilePath);
+                    if (upstream.containsKey(className)) {
+                        continue;
+                    }
+                    var bytes = Files.readAllBytes(classFilePath);
+                    var hash = Hashes.sha256(bytes);
+                    var before = previous.get(className);
+                    upstream.put(className, before != null && before.hash().equals(hash)
+                            ? before
+                            : new UpstreamRecord(hash, ClassFile.read(bytes).constants()));
+                }
+            }
+        }
+        return upstream;
+    }
+
+    private static String internalName(Path root, Path classFile) {
+        var relative = root.relativize(classFile).toString().replace(File.separatorChar, '/');
+        return relative.substring(0, relative.length() - ".class".length());
+    }
+
+    private static void deleteClasses(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (var files = Files.walk(dir)) {
+            for (var file : (Iterable<Path>) files.filter(file -> file.toString().endsWith(".class"))::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private State readState() {
+        // The state file goes away with everything else in target on a clean.
+        if (this.state != null && Files.exists(this.stateFile)) {
+            return this.state;
+        }
+        try (var fis = new FileInputStream(this.stateFile.toFile());
+             var ois = new ObjectInputStream(fis)) {
+            return (State) ois.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // A missing or unreadable state just means compiling everything.
+            return null;
+        }
+    }
+
+    private void writeState(State state) throws IOException {
+        Files.createDirectories(this.stateFile.getParent());
+        try (var fos = new FileOutputStream(this.stateFile.toFile());
+             var oos = new ObjectOutputStream(fos)) {
+            oos.writeObject(state);
+        }
+        this.state = state;
+    }
+}
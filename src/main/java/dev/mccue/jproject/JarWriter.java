@@ -0,0 +1,386 @@
+package dev.mccue.jproject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipFile;
+
+/**
+ * Writes jars which only depend on what goes into them.
+ *
+ * <p>Entries are written in sorted order with a fixed timestamp, so the same inputs always
+ * produce the same bytes. Entries are compressed in parallel a window at a time and written
+ * as soon as every entry before them is, so only that window is ever held in memory.
+ * Entries from other jars are streamed straight out of them, never extracted to disk.
+ */
+final class JarWriter {
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    // 1980-01-01 00:00:00, the earliest time a zip can hold.
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (1 << 5) | 1;
+
+    private static final int WINDOW = Runtime.getRuntime().availableProcessors() * 8;
+
+    @FunctionalInterface
+    private interface Contents {
+        byte[] read() throws IOException;
+    }
+
+    private final Manifest manifest;
+    private final TreeMap<String, List<Contents>> entries;
+    private final List<ZipFile> openJars;
+
+    JarWriter(Manifest manifest) {
+        this.manifest = manifest;
+        this.entries = new TreeMap<>();
+        this.openJars = new ArrayList<>();
+    }
+
+    /**
+     * @return A manifest with the given main class, if any.
+     */
+    static Manifest manifest(String mainClass) {
+        var manifest = new Manifest();
+        var attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.put(new Attributes.Name("Created-By"), "jproject");
+        if (mainClass != null) {
+            attributes.put(Attributes.Name.MAIN_CLASS, mainClass);
+        }
+        return manifest;
+    }
+
+    /**
+     * Adds every file under the directory. Entries which were already added win.
+     */
+    JarWriter addDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return this;
+        }
+        try (var files = Files.walk(directory)) {
+            for (var file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                var name = directory.relativize(file).toString().replace(File.separatorChar, '/');
+                add(name, () -> Files.readAllBytes(file));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds the contents of another jar, as is done for an uber jar. Its manifest, signatures
+     * and module descriptor are left out, and service files are merged with any others of
+     * the same name. Otherwise, entries which were already added win.
+     */
+    JarWriter addJar(Path jar) throws IOException {
+        var zipFile = new ZipFile(jar.toFile());
+        this.openJars.add(zipFile);
+        var zipEntries = zipFile.entries();
+        while (zipEntries.hasMoreElements()) {
+            var zipEntry = zipEntries.nextElement();
+            var name = zipEntry.getName();
+            if (zipEntry.isDirectory() || excludedFromUberJar(name)) {
+                continue;
+            }
+            add(name, () -> {
+                try (var in = zipFile.getInputStream(zipEntry)) {
+                    return in.readAllBytes();
+                }
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Adds an entry for everything on the path: directories are added file by file and jars
+     * entry by entry.
+     */
+    JarWriter addPath(List<Path> path) throws IOException {
+        for (var entry : path) {
+            if (Files.isDirectory(entry)) {
+                addDirectory(entry);
+            }
+            else if (Files.isRegularFile(entry)) {
+                addJar(entry);
+            }
+        }
+        return this;
+    }
+
+    private static boolean excludedFromUberJar(String name) {
+        var upper = name.toUpperCase(Locale.US);
+        if (upper.equals(MANIFEST) || upper.equals("META-INF/INDEX.LIST")) {
+            return true;
+        }
+        if (name.equals("module-info.class") || name.endsWith("/module-info.class")) {
+            return true;
+        }
+        return upper.startsWith("META-INF/") && upper.indexOf('/', "META-INF/".length()) == -1
+                && (upper.endsWith(".SF") || upper.endsWith(".DSA") || upper.endsWith(".RSA") || upper.endsWith(".EC"));
+    }
+
+    private void add(String name, Contents contents) {
+        if (name.equals(MANIFEST)) {
+            return;
+        }
+        var existing = this.entries.get(name);
+        if (existing == null) {
+            this.entries.put(name, new ArrayList<>(List.of(contents)));
+        }
+        else if (name.startsWith("META-INF/services/")) {
+            existing.add(contents);
+        }
+    }
+
+    private record Compressed(String name, byte[] data, int method, long crc, long size) {}
+
+    /**
+     * Writes the jar, replacing whatever was at the destination once it is complete.
+     */
+    void write(Path destination) throws IOException {
+        Files.createDirectories(destination.toAbsolutePath().getParent());
+        var temp = destination.resolveSibling(destination.getFileName() + ".tmp");
+        var executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                runnable -> {
+                    var thread = new Thread(runnable, "jproject-jar");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        try {
+            try (var out = new ZipOutput(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                writeEntries(out, executor);
+            } finally {
+                executor.shutdownNow();
+                for (var jar : this.openJars) {
+                    jar.close();
+                }
+            }
+            Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeEntries(ZipOutput out, ExecutorService executor) throws IOException {
+        var manifestBytes = new ByteArrayOutputStream();
+        this.manifest.write(manifestBytes);
+        out.writeEntry(directory("META-INF/"));
+        out.writeEntry(compress(MANIFEST, manifestBytes.toByteArray()));
+
+        var names = new TreeSet<>(this.entries.keySet());
+        for (var name : this.entries.keySet()) {
+            for (int slash = name.indexOf('/'); slash != -1; slash = name.indexOf('/', slash + 1)) {
+                names.add(name.substring(0, slash + 1));
+            }
+        }
+        names.remove("META-INF/");
+
+        var pending = new ArrayDeque<Future<Compressed>>();
+        for (var name : names) {
+            if (pending.size() >= WINDOW) {
+                out.writeEntry(join(pending.poll()));
+            }
+            var sources = this.entries.get(name);
+            pending.add(sources == null
+                    ? CompletableFuture.completedFuture(directory(name))
+                    : executor.submit(() -> compress(name, read(sources))));
+        }
+        while (!pending.isEmpty()) {
+            out.writeEntry(join(pending.poll()));
+        }
+    }
+
+    private static byte[] read(List<Contents> sources) throws IOException {
+        if (sources.size() == 1) {
+            return sources.get(0).read();
+        }
+        var merged = new ByteArrayOutputStream();
+        for (var source : sources) {
+            var bytes = source.read();
+            merged.write(bytes);
+            if (bytes.length > 0 && bytes[bytes.length - 1] != '\n') {
+                merged.write('\n');
+            }
+        }
+        return merged.toByteArray();
+    }
+
+    private static Compressed directory(String name) {
+        return new Compressed(name, new byte[0], 0, 0, 0);
+    }
+
+    private static Compressed compress(String name, byte[] bytes) {
+        var crc = new CRC32();
+        crc.update(bytes);
+
+        var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            var compressed = new ByteArrayOutputStream(Math.max(64, bytes.length / 2));
+            var buffer = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return compressed.size() < bytes.length
+                    ? new Compressed(name, compressed.toByteArray(), 8, crc.getValue(), bytes.length)
+                    : new Compressed(name, bytes, 0, crc.getValue(), bytes.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static Compressed join(Future<Compressed> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Just enough of the zip format to write local headers, a central directory and, when
+     * there are too many entries or the file is too big for the original format, the zip64
+     * end records.
+     */
+    private static final class ZipOutput implements Closeable {
+        private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+
+        private record CentralEntry(byte[] name, int method, long crc, long compressedSize, long size, long offset) {}
+
+        private final OutputStream out;
+        private final List<CentralEntry> central;
+        private long written;
+
+        ZipOutput(OutputStream out) {
+            this.out = out;
+            this.central = new ArrayList<>();
+            this.written = 0;
+        }
+
+        void writeEntry(Compressed entry) throws IOException {
+            var name = entry.name().getBytes(StandardCharsets.UTF_8);
+            var offset = this.written;
+
+            writeInt(0x04034b50);
+            writeShort(20);
+            writeShort(0x0800); // names are UTF-8
+            writeShort(entry.method());
+            writeShort(DOS_TIME);
+            writeShort(DOS_DATE);
+            writeInt(entry.crc());
+            writeInt(entry.data().length);
+            writeInt(entry.size());
+            writeShort(name.length);
+            writeShort(0);
+            write(name);
+            write(entry.data());
+
+            this.central.add(new CentralEntry(
+                    name, entry.method(), entry.crc(), entry.data().length, entry.size(), offset
+            ));
+        }
+
+        @Override
+        public void close() throws IOException {
+            var centralOffset = this.written;
+            for (var entry : this.central) {
+                var zip64Offset = entry.offset() >= ZIP64_LIMIT;
+                writeInt(0x02014b50);
+                writeShort(zip64Offset ? 45 : 20);
+                writeShort(zip64Offset ? 45 : 20);
+                writeShort(0x0800);
+                writeShort(entry.method());
+                writeShort(DOS_TIME);
+                writeShort(DOS_DATE);
+                writeInt(entry.crc());
+                writeInt(entry.compressedSize());
+                writeInt(entry.size());
+                writeShort(entry.name().length);
+                writeShort(zip64Offset ? 12 : 0);
+                writeShort(0); // comment
+                writeShort(0); // disk
+                writeShort(0); // internal attributes
+                writeInt(0); // external attributes
+                writeInt(zip64Offset ? ZIP64_LIMIT : entry.offset());
+                write(entry.name());
+                if (zip64Offset) {
+                    writeShort(0x0001);
+                    writeShort(8);
+                    writeLong(entry.offset());
+                }
+            }
+            var centralSize = this.written - centralOffset;
+
+            var zip64 = this.central.size() >= 0xFFFF
+                    || centralOffset >= ZIP64_LIMIT
+                    || centralSize >= ZIP64_LIMIT;
+            if (zip64) {
+                var zip64EndOffset = this.written;
+                writeInt(0x06064b50);
+                writeLong(44);
+                writeShort(45);
+                writeShort(45);
+                writeInt(0);
+                writeInt(0);
+                writeLong(this.central.size());
+                writeLong(this.central.size());
+                writeLong(centralSize);
+                writeLong(centralOffset);
+
+                writeInt(0x07064b50);
+                writeInt(0);
+                writeLong(zip64EndOffset);
+                writeInt(1);
+            }
+
+            writeInt(0x06054b50);
+            writeShort(0);
+            writeShort(0);
+            writeShort(zip64 ? 0xFFFF : this.central.size());
+            writeShort(zip64 ? 0xFFFF : this.central.size());
+            writeInt(zip64 ? ZIP64_LIMIT : centralSize);
+            writeInt(zip64 ? ZIP64_LIMIT : centralOffset);
+            writeShort(0);
+
+            this.out.close();
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            this.out.write(bytes);
+            this.written += bytes.length;
+        }
+
+        private void writeShort(int value) throws IOException {
+            this.out.write(value & 0xFF);
+            this.out.write((value >>> 8) & 0xFF);
+            this.written += 2;
+        }
+
+        private void writeInt(long value) throws IOException {
+            writeShort((int) (value & 0xFFFF));
+            writeShort((int) ((value >>> 16) & 0xFFFF));
+        }
+
+        private void writeLong(long value) throws IOException {
+            writeInt(value & 0xFFFFFFFFL);
+            writeInt(value >>> 32);
+        }
+    }
+}
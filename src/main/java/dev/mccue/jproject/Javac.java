@@ -0,0 +1,209 @@
+package dev.mccue.jproject;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs javac in this process through the compiler API.
+ *
+ * <p>Compilations reuse {@link StandardJavaFileManager}s, which hold on to the jars they
+ * have opened. That way compiling src, test and bench against mostly the same dependencies
+ * only opens and indexes each jar once. A file manager can't be used by two compilations
+ * at the same time, so compilations which overlap each get their own.
+ */
+final class Javac {
+    private Javac() {}
+
+    private static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
+
+    private static final Deque<StandardJavaFileManager> IDLE_FILE_MANAGERS = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Everything about a single compilation other than the sources.
+     *
+     * @param classPath Directories and jars to put on the class path.
+     * @param modulePath Directories and jars to put on the module path. Annotation processors
+     *                   are looked for here as well.
+     * @param classesDir Where to put compiled classes.
+     * @param generatedSourcesDir Where to put sources generated by annotation processors.
+     * @param options Any other options for javac.
+     */
+    record Options(
+            List<Path> classPath,
+            List<Path> modulePath,
+            Path classesDir,
+            Path generatedSourcesDir,
+            List<String> options
+    ) {}
+
+    /**
+     * Compiles the given sources.
+     *
+     * @param onOutput Called with the internal name of every class written and the source it came from.
+     * @return Whether compilation succeeded.
+     */
+    static boolean compile(
+            Options options,
+            List<Path> sources,
+            BiConsumer<String, Path> onOutput
+    ) throws IOException {
+        var fileManager = IDLE_FILE_MANAGERS.pollFirst();
+        if (fileManager == null) {
+            fileManager = COMPILER.getStandardFileManager(null, Locale.getDefault(), null);
+        }
+        try {
+            var reused = fileManager;
+            Timings.count("files compiled", sources.size());
+            return Timings.time("javac", () -> compile(reused, options, sources, onOutput));
+        } finally {
+            IDLE_FILE_MANAGERS.addFirst(fileManager);
+        }
+    }
+
+    private static boolean compile(
+            StandardJavaFileManager fileManager,
+            Options options,
+            List<Path> sources,
+            BiConsumer<String, Path> onOutput
+    ) throws IOException {
+        Files.createDirectories(options.classesDir());
+        Files.createDirectories(options.generatedSourcesDir());
+        fileManager.setLocationFromPaths(StandardLocation.CLASS_PATH, options.classPath());
+        fileManager.setLocationFromPaths(StandardLocation.MODULE_PATH, options.modulePath());
+        fileManager.setLocationFromPaths(StandardLocation.ANNOTATION_PROCESSOR_MODULE_PATH, options.modulePath());
+        fileManager.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, List.of(options.classesDir()));
+        fileManager.setLocationFromPaths(StandardLocation.SOURCE_OUTPUT, List.of(options.generatedSourcesDir()));
+
+        var trackingFileManager = new ForwardingJavaFileManager<>(fileManager) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(
+                    Location location,
+                    String className,
+                    JavaFileObject.Kind kind,
+                    FileObject sibling
+            ) throws IOException {
+                if (kind == JavaFileObject.Kind.CLASS && sibling != null) {
+                    onOutput.accept(className.replace('.', '/'), Path.of(sibling.toUri()));
+                }
+                return super.getJavaFileForOutput(location, className, kind, sibling);
+            }
+        };
+
+        var diagnostics = new Diagnostics();
+        var success = COMPILER.getTask(
+                null,
+                trackingFileManager,
+                diagnostics,
+                options.options(),
+                null,
+                fileManager.getJavaFileObjectsFromPaths(sources)
+        ).call();
+        diagnostics.printSummary();
+        return success;
+    }
+
+    /**
+     * Prints diagnostics as they come, in roughly the same format as the javac command.
+     */
+    private static final class Diagnostics implements DiagnosticListener<JavaFileObject> {
+        private final AtomicInteger errors = new AtomicInteger();
+        private final AtomicInteger warnings = new AtomicInteger();
+
+        @Override
+        public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+            var kind = switch (diagnostic.getKind()) {
+                case ERROR -> {
+                    errors.incrementAndGet();
+                    yield "error: ";
+                }
+                case WARNING, MANDATORY_WARNING -> {
+                    warnings.incrementAndGet();
+                    yield "warning: ";
+                }
+                case NOTE -> "Note: ";
+                case OTHER -> "";
+            };
+
+            var message = new StringBuilder();
+            var source = diagnostic.getSource();
+            if (source != null) {
+                message.append(relativize(source))
+                        .append(':')
+                        .append(diagnostic.getLineNumber())
+                        .append(": ");
+            }
+            message.append(kind).append(diagnostic.getMessage(Locale.getDefault()));
+
+            if (source != null && diagnostic.getLineNumber() != Diagnostic.NOPOS) {
+                var line = sourceLine(source, diagnostic.getLineNumber());
+                if (line != null) {
+                    message.append(System.lineSeparator())
+                            .append(line)
+                            .append(System.lineSeparator())
+                            .append(" ".repeat((int) Math.max(0, diagnostic.getColumnNumber() - 1)))
+                            .append('^');
+                }
+            }
+            System.err.println(message);
+        }
+
+        void printSummary() {
+            var errors = this.errors.get();
+            var warnings = this.warnings.get();
+            if (errors > 0) {
+                System.err.println(errors + (errors == 1 ? " error" : " errors"));
+            }
+            if (warnings > 0) {
+                System.err.println(warnings + (warnings == 1 ? " warning" : " warnings"));
+            }
+        }
+
+        private static String relativize(JavaFileObject source) {
+            try {
+                var path = Path.of(source.toUri());
+                var workingDirectory = Path.of("").toAbsolutePath();
+                return path.startsWith(workingDirectory)
+                        ? workingDirectory.relativize(path).toString()
+                        : path.toString();
+            } catch (IllegalArgumentException e) {
+                return source.getName();
+            }
+        }
+
+        private static String sourceLine(JavaFileObject source, long lineNumber) {
+            try {
+                return source.getCharContent(true)
+                        .toString()
+                        .lines()
+                        .skip(lineNumber - 1)
+                        .findFirst()
+                        .orElse(null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @return The entries of a path, as produced by {@link dev.mccue.jproject.model.Basis#path()}.
+     */
+    static List<Path> splitPath(String path) {
+        if (path.isEmpty()) {
+            return List.of();
+        }
+        return Arrays.stream(path.split(File.pathSeparator))
+                .map(Path::of)
+                .toList();
+    }
+}
@@ -0,0 +1,206 @@
+package dev.mccue.jproject;
+
+import com.moandjiezana.toml.Toml;
+import com.moandjiezana.toml.TomlWriter;
+import dev.mccue.jproject.model.AvailableDuring;
+import dev.mccue.jproject.model.Checksums;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static dev.mccue.jproject.Conventions.MAVEN_LOCAL_REPOSITORY;
+
+/**
+ * The fully resolved path for every {@link AvailableDuring}, written out by {@code jproject lock}.
+ *
+ * <p>The lockfile remembers the hash of the jproject.toml it was made from and is only
+ * used while that hash still matches. Jars that live in the local maven repository are
+ * recorded relative to it, so a lockfile made on one machine works on another.
+ *
+ * <p>Using the lockfile has to stay quick, so it only checks that every file is still there with
+ * the size it was locked with. The hashes are only checked by {@link #verify()}.
+ */
+final class Lockfile {
+    /**
+     * A single entry on a path.
+     *
+     * @param coordinate The {@code group/artifact/version} of the jar, if it came out of the local
+     *                   maven repository. In that case path is relative to that repository.
+     * @param path Where the entry is.
+     * @param sha256 The hash of the entry, if it is a file.
+     * @param size The size of the entry in bytes, if it is a file and the lockfile recorded it.
+     */
+    record Entry(String coordinate, String path, String sha256, Long size) {
+        Path resolve() {
+            return this.coordinate == null
+                    ? Path.of(this.path)
+                    : MAVEN_LOCAL_REPOSITORY.resolve(this.path);
+        }
+    }
+
+    private final Map<AvailableDuring, List<Entry>> entries;
+
+    private Lockfile(Map<AvailableDuring, List<Entry>> entries) {
+        this.entries = entries;
+    }
+
+    private static String key(AvailableDuring availableDuring) {
+        return availableDuring.name().toLowerCase(Locale.US).replace('_', '-');
+    }
+
+    /**
+     * @return The path for the given scope, ready to be used as a CLI argument, or empty
+     * if the lockfile doesn't have it or any of its jars have gone missing or changed.
+     */
+    Optional<String> path(AvailableDuring availableDuring) {
+        var entries = this.entries.get(availableDuring);
+        if (entries == null) {
+            return Optional.empty();
+        }
+
+        if (!entries.stream().allMatch(Lockfile::present)) {
+            return Optional.empty();
+        }
+        return Optional.of(entries.stream()
+                .map(entry -> entry.resolve().toString())
+                .collect(Collectors.joining(File.pathSeparator)));
+    }
+
+    /**
+     * @return Whether the entry is still there, with the size it was locked with.
+     */
+    private static boolean present(Entry entry) {
+        var path = entry.resolve();
+        if (entry.size() == null) {
+            return Files.exists(path);
+        }
+        try {
+            if (Files.size(path) != entry.size()) {
+                System.err.println(path + " has changed since it was locked, delete it to download it again");
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Hashes every file in the lockfile, all at once.
+     *
+     * @return The files which are missing or don't have the hash they were locked with.
+     */
+    List<Path> verify() {
+        return this.entries.values().stream()
+                .flatMap(List::stream)
+                .filter(entry -> entry.sha256() != null)
+                .distinct()
+                .parallel()
+                .filter(entry -> {
+                    var path = entry.resolve();
+                    return !Files.isRegularFile(path)
+                            || !entry.sha256().equals(Checksums.hash(path, Checksums.Algorithm.SHA256));
+                })
+                .map(Entry::resolve)
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Reads the lockfile, as long as it was made from the current contents of the toml file.
+     */
+    static Optional<Lockfile> read(Path lockfile, Path tomlFile) {
+        if (!Files.exists(lockfile)) {
+            return Optional.empty();
+        }
+
+        var toml = new Toml().read(lockfile.toFile());
+        if (!Hashes.sha256(tomlFile).equals(toml.getString("toml-sha256"))) {
+            System.err.println(lockfile + " is out of date with " + tomlFile + ", run jproject lock to update it");
+            return Optional.empty();
+        }
+
+        var entries = new EnumMap<AvailableDuring, List<Entry>>(AvailableDuring.class);
+        for (var availableDuring : AvailableDuring.values()) {
+            var tables = toml.getTables(key(availableDuring));
+            if (tables == null) {
+                continue;
+            }
+            entries.put(availableDuring, tables.stream()
+                    .map(table -> new Entry(
+                            table.getString("coordinate"),
+                            table.getString("path"),
+                            table.getString("sha256"),
+                            table.getLong("size")
+                    ))
+                    .toList());
+        }
+        return Optional.of(new Lockfile(entries));
+    }
+
+    /**
+     * Writes a lockfile for the given paths, hashing every jar on them.
+     */
+    static void write(Path lockfile, Path tomlFile, Map<AvailableDuring, String> paths) throws IOException {
+        var contents = new LinkedHashMap<String, Object>();
+        contents.put("toml-sha256", Hashes.sha256(tomlFile));
+        for (var availableDuring : AvailableDuring.values()) {
+            var path = paths.get(availableDuring);
+            if (path == null) {
+                continue;
+            }
+            contents.put(key(availableDuring), Javac.splitPath(path).parallelStream()
+                    .map(Lockfile::entry)
+                    .map(entry -> {
+                        var table = new LinkedHashMap<String, Object>();
+                        if (entry.coordinate() != null) {
+                            table.put("coordinate", entry.coordinate());
+                        }
+                        table.put("path", entry.path());
+                        if (entry.sha256() != null) {
+                            table.put("sha256", entry.sha256());
+                        }
+                        if (entry.size() != null) {
+                            table.put("size", entry.size());
+                        }
+                        return table;
+                    })
+                    .toList());
+        }
+
+        Files.writeString(lockfile, new TomlWriter().write(contents));
+    }
+
+    private static Entry entry(Path path) {
+        var absolute = path.toAbsolutePath().normalize();
+        String sha256 = null;
+        Long size = null;
+        if (Files.isRegularFile(absolute)) {
+            sha256 = Checksums.hash(absolute, Checksums.Algorithm.SHA256);
+            try {
+                size = Files.size(absolute);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (!absolute.startsWith(MAVEN_LOCAL_REPOSITORY)) {
+            return new Entry(null, path.toString(), sha256, size);
+        }
+
+        // group/id/parts/artifact/version/artifact-version.jar
+        var relative = MAVEN_LOCAL_REPOSITORY.relativize(absolute);
+        var parts = new ArrayList<String>();
+        relative.forEach(part -> parts.add(part.toString()));
+        var coordinate = parts.size() < 4 ? null : String.join(".", parts.subList(0, parts.size() - 3))
+                + "/" + parts.get(parts.size() - 3)
+                + "/" + parts.get(parts.size() - 2);
+        return coordinate == null
+                ? new Entry(null, absolute.toString(), sha256, size)
+                : new Entry(coordinate, String.join("/", parts), sha256, size);
+    }
+}
@@ -2,16 +2,13 @@ package dev.mccue.jproject;
 
 import dev.mccue.jproject.model.*;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.FileFileFilter;
-import org.apache.commons.io.filefilter.SuffixFileFilter;
 
-import javax.tools.Diagnostic;
-import javax.tools.DiagnosticListener;
-import javax.tools.JavaFileObject;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.spi.ToolProvider;
+import java.util.stream.Collectors;
 
 import static dev.mccue.jproject.Conventions.*;
 
@@ -19,45 +16,139 @@ public final class Main {
 
     private Main() {}
 
+    private static final PathCache PATH_CACHE = new PathCache(PATH_CACHE_DIR);
+
+    private static final IncrementalCompiler SRC_COMPILER = new IncrementalCompiler(
+            SRC_DIR,
+            SRC_CLASSES_DIR,
+            SRC_GENERATED_SOURCES_DIR,
+            SRC_COMPILE_STATE_PATH
+    );
+
+    private static final IncrementalCompiler TEST_COMPILER = new IncrementalCompiler(
+            TEST_DIR,
+            TEST_CLASSES_DIR,
+            TEST_GENERATED_SOURCES_DIR,
+            TEST_COMPILE_STATE_PATH
+    );
+
+    private static final IncrementalCompiler BENCH_COMPILER = new IncrementalCompiler(
+            BENCH_DIR,
+            BENCH_CLASSES_DIR,
+            BENCH_GENERATED_SOURCES_DIR,
+            BENCH_COMPILE_STATE_PATH
+    );
+
+    /**
+     * The options every source set is compiled with.
+     */
+    static final List<String> JAVAC_OPTIONS = List.of(
+            "-g", // Generates debug symbols. Should always do this
+            "-Xlint:all,-processing",
+            "--add-modules",
+            "ALL-MODULE-PATH"
+    );
+
     /**
      * Small helper to pull the path out of a basis, but cache results.
      */
     private static String path(Basis basis) {
-        var cachePath = Path.of(".path-cache");
-        Map<?, ?> cacheMap = null;
-        try (var fis = new FileInputStream(cachePath.toFile());
-             var ois = new ObjectInputStream(fis)) {
-            cacheMap = (Map<?, ?>) ois.readObject();
-            // System.err.println("Loaded cache: " + cacheMap);
-        } catch (FileNotFoundException e) {
-            // System.err.println("No cache file found");
-            // noop
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
+        return PATH_CACHE.path(basis);
+    }
+
+    private static Optional<Lockfile> lockfile;
+
+    /**
+     * The project's lockfile, read once per process.
+     */
+    private static synchronized Optional<Lockfile> lockfile() {
+        if (lockfile == null) {
+            lockfile = Timings.time("read lockfile", () -> Lockfile.read(JPROJECT_LOCK_PATH, JPROJECT_TOML_PATH));
         }
+        return lockfile;
+    }
 
-        if (cacheMap != null &&  cacheMap.get(basis) instanceof String path) {
-            // System.err.println("Using cached value: " + path);
-            return path;
+    /**
+     * The path of the project's dependencies for the given scope. An up-to-date lockfile is
+     * used as is. Otherwise, if a daemon is running it is asked for the path, so that nothing
+     * has to be resolved in this process. The daemon isn't asked when offline, since it
+     * resolves with its own settings.
+     */
+    private static String path(ApplicationModule project, AvailableDuring availableDuring) {
+        return lockfile()
+                .flatMap(lockfile -> lockfile.path(availableDuring))
+                .or(() -> Resolver.offline() ? Optional.empty() : Daemon.path(Path.of(""), availableDuring))
+                .orElseGet(() -> resolvePath(project, availableDuring));
+    }
+
+    private static ProjectPaths projectPaths;
+
+    private static synchronized ProjectPaths projectPaths(ApplicationModule project) {
+        if (projectPaths == null) {
+            projectPaths = new ProjectPaths(project, PATH_CACHE);
         }
-        else {
-            // System.err.println("Caching path: " + basis.path());
-            var path= basis.path();
-            var newCacheMap = cacheMap == null ?
-                    new HashMap<>() :
-                    new HashMap<Object, Object>(cacheMap);
-            newCacheMap.put(basis, path);
-            try (var fos = new FileOutputStream(cachePath.toFile());
-                 var oos = new ObjectOutputStream(fos)) {
-                oos.writeObject(newCacheMap);
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
-            return path;
+        return projectPaths;
+    }
+
+    /**
+     * Forgets the lockfile and every resolved path, for when jproject.toml or the lockfile changed.
+     */
+    private static synchronized void forgetPaths() {
+        lockfile = null;
+        projectPaths = null;
+    }
+
+    private static String resolvePath(ApplicationModule project, AvailableDuring availableDuring) {
+        return projectPaths(project).path(availableDuring);
+    }
+
+    /**
+     * Resolves every scope, reusing any path already in the path cache, and writes them all to
+     * the lockfile.
+     */
+    private static void lock(ApplicationModule project) throws Exception {
+        var paths = new ConcurrentHashMap<AvailableDuring, String>();
+        var graph = new TaskGraph();
+        for (var availableDuring : AvailableDuring.values()) {
+            graph.add(
+                    "resolve " + availableDuring,
+                    List.of(),
+                    () -> paths.put(availableDuring, resolvePath(project, availableDuring))
+            );
         }
+        graph.run();
+
+        Lockfile.write(JPROJECT_LOCK_PATH, JPROJECT_TOML_PATH, paths);
+    }
+
+    /**
+     * Joins the given entries into a single path, skipping any empty ones.
+     */
+    private static String joinPaths(String... entries) {
+        return Arrays.stream(entries)
+                .filter(entry -> !entry.isEmpty())
+                .collect(Collectors.joining(File.pathSeparator));
+    }
 
+    /**
+     * @return The value following the given option, or the default if it isn't there.
+     */
+    private static int intOption(List<String> options, String name, int defaultValue) {
+        var index = options.indexOf(name);
+        if (index == -1) {
+            return defaultValue;
+        }
+        if (index + 1 >= options.size()) {
+            System.err.println(name + " needs a number");
+            System.exit(1);
+        }
+        try {
+            return Math.max(1, Integer.parseInt(options.get(index + 1)));
+        } catch (NumberFormatException e) {
+            System.err.println(name + " needs a number, not " + options.get(index + 1));
+            System.exit(1);
+            return defaultValue;
+        }
     }
 
     private static void crashOn(int status) {
@@ -66,25 +157,49 @@ public final class Main {
         }
     }
 
+    private static void crashUnless(boolean success) {
+        if (!success) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Thrown when part of a build fails. Whatever failed has already said why.
+     */
+    private static final class BuildFailedException extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        BuildFailedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static void failUnless(boolean success) {
+        if (!success) {
+            throw new BuildFailedException();
+        }
+    }
+
     private static void runCommand(List<String> cmd) throws Exception {
         // System.out.println(cmd);
-        crashOn(
+        crashOn(Timings.time("forked process", () ->
                 new ProcessBuilder(cmd)
                         .inheritIO()
                         .start()
                         .waitFor()
-        );
+        ));
     }
 
     private static void runTool(String tool, List<String> args) throws IOException, InterruptedException {
         /*System.out.print(tool);
         System.out.print(": ");
         System.out.println(args);*/
-        crashOn(
+        crashOn(Timings.time(tool, () ->
                 ToolProvider.findFirst(tool)
                         .orElseThrow()
                         .run(System.out, System.err, args.toArray(new String[0]))
-        );
+        ));
     }
 
     private static void clean() throws Exception {
@@ -92,41 +207,194 @@ public final class Main {
     }
 
     private static void compile(ApplicationModule project) throws Exception {
-        clean();
-        var path = path(Basis.usingMavenCentral()
-                .addDependencies(project.dependencies(AvailableDuring.NORMAL_COMPILE_TIME))
-                .build());
-
-        var javacArgs = new ArrayList<>(List.of(
-                "-g", // Generates debug symbols. Should always do this
-                "-Xlint:all,-processing",
-                "--add-modules",
-                "ALL-MODULE-PATH",
-                "-d", SRC_CLASSES_DIR.toString(),
-                "-s", SRC_GENERATED_SOURCES_DIR.toString()
-        ));
+        var path = path(project, AvailableDuring.NORMAL_COMPILE_TIME);
+
+        failUnless(SRC_COMPILER.compile(List.of(), Javac.splitPath(path), JAVAC_OPTIONS));
+
+        Timings.time("sync resources", () -> {
+            var result = new ResourceSync(SRC_DIR, SRC_CLASSES_DIR, SRC_RESOURCE_STATE_PATH).sync();
+            Timings.count("resource files linked", result.linked());
+            Timings.count("resource files copied", result.copied());
+            Timings.count("resource bytes copied", result.bytesCopied());
+            Timings.count("resource files deleted", result.deleted());
+        });
+    }
+
+    /**
+     * Packages the compiled classes into app.jar, or with uber the classes and every runtime
+     * dependency into app-standalone.jar.
+     */
+    private static void jar(ApplicationModule project, boolean uber) throws Exception {
+        var writer = new JarWriter(JarWriter.manifest(project.mainClass()))
+                .addDirectory(SRC_CLASSES_DIR);
+        if (uber) {
+            writer.addPath(Javac.splitPath(path(project, AvailableDuring.NORMAL_RUN_TIME)));
+        }
+        Timings.time("write jar", () -> writer.write(uber ? UBER_JAR_FILE : NORMAL_JAR_FILE));
+    }
+
+    /**
+     * Compiles the given scopes. Resolving the path for each scope can overlap with compiling
+     * src, and compiling test and bench only has to wait for src, not for each other.
+     *
+     * @param alsoResolve Scopes to resolve alongside compiling, for whatever comes after.
+     */
+    private static void build(
+            ApplicationModule project,
+            Set<Scope> scopes,
+            Set<AvailableDuring> alsoResolve
+    ) throws Exception {
+        var graph = new TaskGraph();
+        var toResolve = EnumSet.noneOf(AvailableDuring.class);
+        toResolve.addAll(alsoResolve);
+
+        toResolve.add(AvailableDuring.NORMAL_COMPILE_TIME);
+        graph.add("compile src", List.of("resolve " + AvailableDuring.NORMAL_COMPILE_TIME), () -> compile(project));
+        if (scopes.contains(Scope.TEST)) {
+            toResolve.add(AvailableDuring.TEST_COMPILE_TIME);
+            graph.add(
+                    "compile test",
+                    List.of("compile src", "resolve " + AvailableDuring.TEST_COMPILE_TIME),
+                    () -> compileTest(project)
+            );
+        }
+        if (scopes.contains(Scope.BENCH)) {
+            toResolve.add(AvailableDuring.BENCH_COMPILE_TIME);
+            graph.add(
+                    "compile bench",
+                    List.of("compile src", "resolve " + AvailableDuring.BENCH_COMPILE_TIME),
+                    () -> compileBench(project)
+            );
+        }
+
+        for (var availableDuring : toResolve) {
+            graph.add("resolve " + availableDuring, List.of(), () -> path(project, availableDuring));
+        }
+
+        graph.run();
+    }
 
-        if (!"".equals(path)) {
-            javacArgs.addAll(List.of(
-                    "--module-path", path,
-                    "--processor-module-path", path
+    /**
+     * Runs a command for a workspace. Only building and cleaning work across a whole workspace,
+     * anything else has to be run inside one of its members.
+     */
+    private static void workspace(String subcommand, List<String> options) throws Exception {
+        var workspace = Timings.time("parse jproject.toml", () -> Workspace.fromFile(JPROJECT_TOML_PATH));
+        var build = new WorkspaceBuild(workspace, PATH_CACHE);
+        switch (subcommand) {
+            case "clean" -> build.clean();
+            case "compile" -> failUnless(build.build(EnumSet.of(Scope.NORMAL)));
+            case "build" -> failUnless(build.build(
+                    options.contains("--all") ? EnumSet.allOf(Scope.class) : EnumSet.of(Scope.NORMAL)
             ));
+            default -> {
+                System.err.println("\"" + subcommand + "\" can't be run on a whole workspace, run it inside one of "
+                        + workspace.members().stream().map(member -> member.directory().toString()).toList());
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Compares two runs from the benchmark history. With no runs given that is the last run
+     * against the one before it, and with one that is the last run against the given one.
+     *
+     * @return Whether nothing regressed.
+     */
+    private static boolean compareBenchmarks(List<String> options) throws IOException {
+        var threshold = intOption(options, "--threshold", 5) / 100.0;
+        var queries = new ArrayList<String>();
+        for (int i = 0; i < options.size(); i++) {
+            if ("--threshold".equals(options.get(i))) {
+                i++;
+            }
+            else if (!options.get(i).startsWith("--")) {
+                queries.add(options.get(i));
+            }
         }
 
-        FileUtils
-                .listFiles(SRC_DIR.toFile(), new String[] { "java" }, true)
-                .forEach(sourceFile -> javacArgs.add(sourceFile.toString()));
+        var runs = BenchHistory.runs(BENCH_HISTORY_DIR);
+        Path candidate;
+        if (queries.size() > 1) {
+            candidate = BenchHistory.find(BENCH_HISTORY_DIR, queries.get(1)).orElse(null);
+        }
+        else {
+            candidate = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+        }
+        if (candidate == null) {
+            System.err.println("No benchmark run to compare, run jproject bench first");
+            return false;
+        }
 
-        runTool(
-                "javac",
-                javacArgs
-        );
+        Path baseline;
+        if (!queries.isEmpty()) {
+            baseline = BenchHistory.find(BENCH_HISTORY_DIR, queries.get(0)).orElse(null);
+        }
+        else {
+            var index = runs.indexOf(candidate);
+            baseline = index > 0 ? runs.get(index - 1) : null;
+        }
+        if (baseline == null) {
+            System.err.println(queries.isEmpty()
+                    ? "No earlier benchmark run to compare against"
+                    : "No benchmark run matches " + queries.get(0) + " in " + BENCH_HISTORY_DIR);
+            return false;
+        }
 
-        FileUtils.copyDirectory(
-                SRC_DIR.toFile(),
-                SRC_CLASSES_DIR.toFile(),
-                FileFileFilter.INSTANCE.and(new SuffixFileFilter(".java").negate())
-        );
+        return BenchHistory.compare(baseline, candidate, threshold);
+    }
+
+    private static List<Path> testClassPath(ApplicationModule project) {
+        return Javac.splitPath(joinPaths(
+                SRC_CLASSES_DIR.toString(),
+                TEST_CLASSES_DIR.toString(),
+                path(project, AvailableDuring.TEST_RUN_TIME)
+        ));
+    }
+
+    /**
+     * Compiles and runs the affected tests every time something in the project changes, until
+     * the process is stopped. Resolved paths, compiler state and the source index all stay in
+     * memory between cycles.
+     */
+    private static void watch(ApplicationModule project, List<String> options) throws Exception {
+        var parallelism = intOption(options, "--parallelism", 1);
+        try (var watcher = new Watcher(
+                List.of(SRC_DIR, TEST_DIR, BENCH_DIR),
+                List.of(JPROJECT_TOML_PATH, JPROJECT_LOCK_PATH)
+        )) {
+            var changed = Set.<Path>of();
+            var first = true;
+            while (true) {
+                var start = System.nanoTime();
+                try {
+                    if (changed.contains(JPROJECT_TOML_PATH.normalize()) || changed.contains(JPROJECT_LOCK_PATH.normalize())) {
+                        project = ApplicationModule.fromFile(JPROJECT_TOML_PATH);
+                        forgetPaths();
+                    }
+
+                    var scopes = EnumSet.of(Scope.NORMAL, Scope.TEST);
+                    if (Files.isDirectory(BENCH_DIR)
+                            && (first || changed.stream().anyMatch(path -> path.startsWith(BENCH_DIR)))) {
+                        scopes.add(Scope.BENCH);
+                    }
+                    build(project, scopes, EnumSet.of(AvailableDuring.TEST_RUN_TIME));
+                    TestRunner.run(testClassPath(project), 1, parallelism, true);
+                } catch (BuildFailedException e) {
+                    System.out.println("Build failed");
+                } catch (Exception e) {
+                    System.out.println("Build failed: " + e);
+                }
+
+                System.out.printf(
+                        "Finished in %d ms, watching for changes. Press Ctrl-C to stop.%n",
+                        (System.nanoTime() - start) / 1_000_000
+                );
+                changed = watcher.await(WATCH_QUIET_PERIOD);
+                SourceIndex.refresh();
+                first = false;
+            }
+        }
     }
 
     private static void newProject(String projectName) throws Exception {
@@ -234,66 +502,40 @@ public final class Main {
                 .start();
     }
     private static void compileTest(ApplicationModule project) throws Exception {
-        var path = path(Basis.usingMavenCentral()
-                .addDependencies(project.dependencies(AvailableDuring.TEST_COMPILE_TIME))
-                .build());
-        var javacArgs = new ArrayList<>(List.of(
-                "-g", // Generates debug symbols. Should always do this
-                "-Xlint:all,-processing",
-                "--class-path",
-                path(Basis.builder()
-                        .addPath(SRC_CLASSES_DIR)
-                        .build()),
-                "--module-path",
-                path,
-                "--processor-module-path",
-                path,
-                "--add-modules",
-                "ALL-MODULE-PATH",
-                "-d", Conventions.TEST_CLASSES_DIR.toString(),
-                "-s", TEST_GENERATED_SOURCES_DIR.toString()
-        ));
+        var path = path(project, AvailableDuring.TEST_COMPILE_TIME);
 
-        FileUtils
-                .listFiles(Conventions.TEST_DIR.toFile(), new String[] { "java" }, true)
-                .forEach(sourceFile -> javacArgs.add(sourceFile.toString()));
-
-        runTool(
-                "javac",
-                javacArgs
-        );
+        failUnless(TEST_COMPILER.compile(List.of(SRC_CLASSES_DIR), Javac.splitPath(path), JAVAC_OPTIONS));
     }
 
     private static void compileBench(ApplicationModule project) throws Exception {
-        var path = path(Basis.usingMavenCentral()
-                .addDependencies(project.dependencies(AvailableDuring.BENCH_COMPILE_TIME))
-                .build());
-
-        var javacArgs = new ArrayList<>(List.of(
-                "-g", // Generates debug symbols. Should always do this
-                "-Xlint:all,-processing",
-                "--module-path",
-                path,
-                "--processor-module-path",
-                path,
-                "--add-modules",
-                "ALL-MODULE-PATH",
-                "-d", BENCH_CLASSES_DIR.toString(),
-                "-s", BENCH_GENERATED_SOURCES_DIR.toString()
-        ));
+        var path = path(project, AvailableDuring.BENCH_COMPILE_TIME);
 
-        FileUtils
-                .listFiles(BENCH_DIR.toFile(), new String[] { "java" }, true)
-                .forEach(sourceFile -> javacArgs.add(sourceFile.toString()));
-
-        runTool(
-                "javac",
-                javacArgs
-        );
+        failUnless(BENCH_COMPILER.compile(List.of(SRC_CLASSES_DIR), Javac.splitPath(path), JAVAC_OPTIONS));
     }
 
     public static void main(String[] args) throws Exception {
-        Setup.setUp();
+        try {
+            run(args);
+        } catch (BuildFailedException e) {
+            System.exit(1);
+        }
+    }
+
+    private static void run(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--timings")) {
+            args = Arrays.stream(args)
+                    .filter(arg -> !"--timings".equals(arg))
+                    .toArray(String[]::new);
+            Timings.reportOnExit(List.of(args), TIMINGS_REPORT_PATH);
+        }
+        if (Arrays.asList(args).contains("--offline")) {
+            args = Arrays.stream(args)
+                    .filter(arg -> !"--offline".equals(arg))
+                    .toArray(String[]::new);
+            System.setProperty("jproject.offline", "true");
+        }
+
+        Timings.time("setup", Setup::setUp);
 
         if (args.length == 0) {
             System.out.println(Messages.USAGE);
@@ -305,46 +547,45 @@ public final class Main {
                 newProject(args[1]);
                 return;
             }
+            if ("daemon".equals(subcommand)) {
+                // Start, stop or check on the background daemon
+                Daemon.command(Arrays.asList(args).subList(1, args.length));
+                return;
+            }
             // Try to find jproject.toml
             if (!Files.exists(Conventions.JPROJECT_TOML_PATH)) {
                 System.err.println("could not find jproject.toml");
                 System.exit(1);
             }
 
+            if (Workspace.isWorkspace(JPROJECT_TOML_PATH)) {
+                workspace(subcommand, Arrays.asList(args).subList(1, args.length));
+                return;
+            }
+
             // Load in info from said file
-            var project = ApplicationModule.fromFile(
+            var project = Timings.time("parse jproject.toml", () -> ApplicationModule.fromFile(
                     Conventions.JPROJECT_TOML_PATH
-            );
+            ));
             switch (subcommand) {
                 // Formats code
                 case "fmt" -> {
-                    var basis = Basis.usingMavenCentral()
-                            .addDependencies(GOOGLE_JAVA_FORMAT_DEPENDENCIES)
-                            .build();
-                    var formatCommand = new ArrayList<>(List.of(
-                            "java",
-                            "--module-path",
-                            path(basis),
-                            "--add-exports", "jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED",
-                            "--add-exports", "jdk.compiler/com.sun.tools.javac.file=ALL-UNNAMED",
-                            "--add-exports", "jdk.compiler/com.sun.tools.javac.parser=ALL-UNNAMED",
-                            "--add-exports", "jdk.compiler/com.sun.tools.javac.tree=ALL-UNNAMED",
-                            "--add-exports", "jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED",
-                            "--add-modules", "ALL-MODULE-PATH",
-                            "com.google.googlejavaformat.java.Main",
-                            "--aosp",
-                            "-r"
-                    ));
-                    FileUtils.listFiles(SRC_DIR.toFile(), new String[] { "java" }, true).forEach(file ->
-                            formatCommand.add(file.toString())
-                    );
-                    FileUtils.listFiles(TEST_DIR.toFile(), new String[] { "java" }, true).forEach(file ->
-                            formatCommand.add(file.toString())
+                    var index = SourceIndex.load();
+                    var files = new ArrayList<Path>();
+                    for (var directory : List.of(SRC_DIR, TEST_DIR, BENCH_DIR)) {
+                        files.addAll(index.files(directory, ".java"));
+                    }
+                    var result = Timings.time("format", () ->
+                            SourceFormatter.format(files, GOOGLE_JAVA_FORMAT_PATH, FMT_CACHE_PATH)
                     );
-                    FileUtils.listFiles(BENCH_DIR.toFile(), new String[] { "java" }, true).forEach(file ->
-                            formatCommand.add(file.toString())
+                    Timings.count("files formatted", result.formatted());
+                    System.out.printf(
+                            "Formatted %d files, %d were already formatted and %d could not be formatted%n",
+                            result.formatted() - result.failed(),
+                            result.skipped(),
+                            result.failed()
                     );
-                    runCommand(formatCommand);
+                    crashUnless(result.failed() == 0);
                 }
 
                 // Clean all cached resources
@@ -352,28 +593,73 @@ public final class Main {
                     clean();
                 }
 
+                // Resolve every scope and write them to jproject.lock
+                case "lock" -> {
+                    if (args.length > 1 && args[1].equals("--verify")) {
+                        var lockfile = lockfile().orElse(null);
+                        if (lockfile == null) {
+                            System.err.println("No up to date " + JPROJECT_LOCK_PATH + " to verify, run jproject lock");
+                            System.exit(1);
+                        }
+                        var changed = Timings.time("verify lockfile", lockfile::verify);
+                        changed.forEach(path -> System.err.println(path + " is missing or has changed since it was locked"));
+                        crashUnless(changed.isEmpty());
+                        System.out.println("Every file in " + JPROJECT_LOCK_PATH + " matches its hash");
+                    }
+                    else {
+                        lock(project);
+                    }
+                }
+
                 // Compile all modules
                 case "compile" -> {
-                    compile(project);
+                    build(project, EnumSet.of(Scope.NORMAL), Set.of());
+                }
+
+                // Compile src, or with --all src, test and bench
+                case "build" -> {
+                    var all = Arrays.asList(args).subList(1, args.length).contains("--all");
+                    build(
+                            project,
+                            all ? EnumSet.allOf(Scope.class) : EnumSet.of(Scope.NORMAL),
+                            Set.of()
+                    );
+                }
+
+                // Package the project into a jar, or with --uber an uber jar
+                case "jar" -> {
+                    var uber = Arrays.asList(args).subList(1, args.length).contains("--uber");
+                    build(
+                            project,
+                            EnumSet.of(Scope.NORMAL),
+                            uber ? EnumSet.of(AvailableDuring.NORMAL_RUN_TIME) : Set.of()
+                    );
+                    jar(project, uber);
                 }
 
                 // Run the project
                 case "run" -> {
-                    compile(project);
-                    var runArgs = new ArrayList<>(List.of(
-                            "java",
+                    var cds = Arrays.asList(args).subList(1, args.length).contains("--cds");
+                    build(project, EnumSet.of(Scope.NORMAL), EnumSet.of(AvailableDuring.NORMAL_RUN_TIME));
+                    var deps = path(project, AvailableDuring.NORMAL_RUN_TIME);
+
+                    var runArgs = new ArrayList<>(List.of("java"));
+                    if (cds) {
+                        // CDS can only archive classes that come out of jars.
+                        jar(project, false);
+                        runArgs.addAll(Cds.jvmOptions(
+                                CDS_DIR,
+                                "app",
+                                Cds.key(deps, Hashes.sha256(NORMAL_JAR_FILE))
+                        ));
+                    }
+                    runArgs.addAll(List.of(
                             "--class-path",
-                            path(Basis.builder()
-                                    .addPath(SRC_CLASSES_DIR)
-                                    .build()),
+                            cds ? NORMAL_JAR_FILE.toString() : SRC_CLASSES_DIR.toString(),
                             "--add-modules",
                             "ALL-MODULE-PATH"
                     ));
 
-                    var deps = path(Basis.usingMavenCentral()
-                            .addDependencies(project.dependencies(AvailableDuring.NORMAL_RUN_TIME))
-                            .build());
-
                     if (!"".equals(deps)) {
                         runArgs.add("--module-path");
                         runArgs.add(deps);
@@ -384,23 +670,60 @@ public final class Main {
                     runCommand(runArgs);
                 }
 
+                // Make a trimmed down runtime with the application in it
+                case "image" -> {
+                    build(project, EnumSet.of(Scope.NORMAL), EnumSet.of(AvailableDuring.NORMAL_RUN_TIME));
+                    jar(project, false);
+                    var jars = new ArrayList<Path>();
+                    jars.add(NORMAL_JAR_FILE);
+                    jars.addAll(Javac.splitPath(path(project, AvailableDuring.NORMAL_RUN_TIME)));
+
+                    var options = Arrays.asList(args).subList(1, args.length);
+                    var extraModules = new ArrayList<String>();
+                    var addModules = options.indexOf("--add-modules");
+                    if (addModules != -1) {
+                        if (addModules + 1 >= options.size()) {
+                            System.err.println("--add-modules needs a comma separated list of modules");
+                            System.exit(1);
+                        }
+                        for (var module : options.get(addModules + 1).split(",")) {
+                            if (!module.isBlank()) {
+                                extraModules.add(module.trim());
+                            }
+                        }
+                    }
+
+                    final Set<String> modules;
+                    try {
+                        modules = RuntimeImage.requiredModules(jars, extraModules);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage());
+                        System.exit(1);
+                        return;
+                    }
+                    RuntimeImage.create(jars, project.mainClass(), modules, IMAGE_DIR);
+                    System.out.println("Created " + IMAGE_DIR + " with " + String.join(", ", modules));
+                    System.out.println("Run it with " + RuntimeImage.launcher(IMAGE_DIR));
+                }
+
                 // Run tests with junit
                 case "test" -> {
-                    compile(project);
-                    compileTest(project);
-                    runCommand(List.of(
-                            "java",
-                            "-jar",
-                            JUNIT_RUNNER_PATH.toString(),
-                            "--class-path",
-                            path(Basis.usingMavenCentral()
-                                    .addDependencies(project.dependencies(AvailableDuring.TEST_RUN_TIME))
-                                    .addPath(SRC_CLASSES_DIR)
-                                    .addPath(TEST_CLASSES_DIR)
-                                    .build()),
-                            "--scan-classpath"
+                    var options = Arrays.asList(args).subList(1, args.length);
+                    var shards = intOption(options, "--shards", 1);
+                    // Not every suite is safe to run concurrently, so that has to be asked for.
+                    var parallelism = intOption(options, "--parallelism", 1);
+                    build(project, EnumSet.of(Scope.NORMAL, Scope.TEST), EnumSet.of(AvailableDuring.TEST_RUN_TIME));
+                    crashUnless(TestRunner.run(
+                            testClassPath(project),
+                            shards,
+                            parallelism,
+                            options.contains("--affected")
                     ));
                 }
+                // Rebuild and rerun affected tests on every change
+                case "watch" -> {
+                    watch(project, Arrays.asList(args).subList(1, args.length));
+                }
                 // Generate docs with javadoc
                 case "doc" -> {
                     var javadocArgs = new ArrayList<>( List.of(
@@ -411,75 +734,134 @@ public final class Main {
                             "--source-path", "src",
                             "--show-packages", "all"
                     ));
-                    var path = path(Basis.usingMavenCentral()
-                            .addDependencies(project.dependencies(AvailableDuring.NORMAL_COMPILE_TIME))
-                            .build());
+                    var path = path(project, AvailableDuring.NORMAL_COMPILE_TIME);
                     if (!"".equals(path)) {
                         javadocArgs.add("--module-path");
                         javadocArgs.add(path);
                     }
 
-                    FileUtils
-                            .listFiles(SRC_DIR.toFile(), new String[] { "java" }, true)
+                    SourceIndex.load()
+                            .files(SRC_DIR, ".java")
                             .forEach(sourceFile -> javadocArgs.add(sourceFile.toString()));
                     runTool("javadoc", javadocArgs);
                 }
 
                 // Run benchmarks with JMH
                 case "bench" -> {
-                    compile(project);
-                    compileBench(project);
+                    var options = Arrays.asList(args).subList(1, args.length);
+                    if (options.contains("--compare")) {
+                        crashUnless(compareBenchmarks(options));
+                        return;
+                    }
+
+                    build(project, EnumSet.of(Scope.NORMAL, Scope.BENCH), EnumSet.of(AvailableDuring.BENCH_RUN_TIME));
                     var benchCmd = new ArrayList<>(List.of(
                             "java",
-                            path(Basis.usingMavenCentral()
-                                    .addPath(SRC_CLASSES_DIR)
-                                    .addPath(BENCH_CLASSES_DIR)
-                                    .build()),
                             "--class-path",
-                            path(Basis.usingMavenCentral()
-                                    .addPath(SRC_CLASSES_DIR)
-                                    .addPath(BENCH_CLASSES_DIR)
-                                    .build()),
+                            joinPaths(
+                                    SRC_CLASSES_DIR.toString(),
+                                    BENCH_CLASSES_DIR.toString(),
+                                    path(project, AvailableDuring.BENCH_RUN_TIME)
+                            ),
                             "org.openjdk.jmh.Main"
                     ));
-                    for (int i = 1; i < args.length; i++) {
-                        benchCmd.add(args[i]);
+                    benchCmd.addAll(options);
+
+                    // Unless asked to put the results somewhere else, keep them in the history.
+                    // A run which fails part way leaves its results behind, so they are written
+                    // outside of the history until it finishes.
+                    var results = BENCH_RUNNING_PATH;
+                    var recording = !options.contains("-rf") && !options.contains("-rff");
+                    if (recording) {
+                        Files.createDirectories(TARGET_DIR);
+                        Files.deleteIfExists(results);
+                        benchCmd.addAll(List.of("-rf", "json", "-rff", results.toString()));
                     }
                     runCommand(benchCmd);
+                    if (recording && Files.exists(results)) {
+                        System.out.println("Results saved to " + BenchHistory.record(results, BENCH_HISTORY_DIR));
+                    }
                 }
                 // Print out the tree of dependencies
                 case "tree" -> {
                     if (args.length == 2) {
                         if (args[1].equals("test-compile-time")) {
                             Basis.usingMavenCentral()
+                                    .addRepositories(project.repositories())
                                     .addDependencies(project.dependencies(AvailableDuring.TEST_COMPILE_TIME))
                                     .build()
                                     .printTree();
                         }
                         else if (args[1].equals("bench-compile-time")) {
                             Basis.usingMavenCentral()
+                                    .addRepositories(project.repositories())
                                     .addDependencies(project.dependencies(AvailableDuring.BENCH_COMPILE_TIME))
                                     .build()
                                     .printTree();
                         }
                     }
                     Basis.usingMavenCentral()
+                            .addRepositories(project.repositories())
                             .addDependencies(project.dependencies(AvailableDuring.NORMAL_COMPILE_TIME))
                             .build()
                             .printTree();
                 }
 
+                // Copy every dependency into a directory which can be used as a file:// repository
+                case "mirror" -> {
+                    if (args.length < 2) {
+                        System.err.println("Usage: jproject mirror <directory>");
+                        System.exit(1);
+                    }
+                    var mirrorDir = Path.of(args[1]);
+                    // Only the maven resolver knows which POMs went into the resolution, and
+                    // without them the mirror couldn't be resolved against.
+                    var basis = Basis.usingMavenCentral()
+                            .addRepositories(project.repositories())
+                            .addDependencies(project.allDependencies())
+                            .resolver(Resolver.maven())
+                            .build();
+                    var files = new LinkedHashSet<>(Timings.time("resolve dependencies", basis::files));
+
+                    // Any other resolver can pick other versions, so the files for exactly those
+                    // versions are added too. What else it reads along the way isn't known.
+                    var resolver = Resolver.defaultResolver();
+                    if (!resolver.name().equals(Resolver.maven().name())) {
+                        var graph = Timings.time("resolve dependencies", () -> Basis.usingMavenCentral()
+                                .addRepositories(project.repositories())
+                                .addDependencies(project.allDependencies())
+                                .resolver(resolver)
+                                .build()
+                                .graph());
+                        var picked = graph.nodes().stream()
+                                .map(node -> new MavenDependency(node.coordinate(), node.version(), List.of()))
+                                .toList();
+                        files.addAll(Timings.time(
+                                "resolve dependencies",
+                                () -> Resolver.maven().files(picked, basis.repositories())
+                        ));
+                        System.err.println("This project resolves with " + resolver.name() + ", which can need POMs "
+                                + "of versions it didn't pick. The mirror is only known to be complete with "
+                                + "jproject.resolver=maven, so check it with --offline before relying on it.");
+                    }
+                    var result = Timings.time("mirror", () -> Mirror.populate(List.copyOf(files), MAVEN_LOCAL_REPOSITORY, mirrorDir));
+                    Timings.count("files mirrored", result.copied());
+                    Timings.count("bytes mirrored", result.bytesCopied());
+                    System.out.printf(
+                            "Copied %d files (%d bytes) into %s, %d were already there%n",
+                            result.copied(),
+                            result.bytesCopied(),
+                            mirrorDir,
+                            result.unchanged()
+                    );
+                    System.out.println("To use it, add it to [repositories] in jproject.toml, like");
+                    System.out.println("    mirror = \"" + mirrorDir.toAbsolutePath().normalize().toUri() + "\"");
+                }
+
                 case "path" -> {
-                    System.out.println(path(Basis.usingMavenCentral()
-                            .addDependencies(project.dependencies(AvailableDuring.BENCH_COMPILE_TIME))
-                            .build()));
+                    System.out.println(path(project, AvailableDuring.BENCH_COMPILE_TIME));
                 }
             }
         }
-
-        var basis = Basis.builder()
-                .addDependency(new MavenDependency("org.apache", "whatever", "12.14"))
-                .addPath(SRC_CLASSES_DIR)
-                .build();
     }
 }
@@ -19,14 +19,30 @@ public final class Messages {
                     
                     Available commands:
                         new      Create a new Java project
-                        run      Run the project
-                        test     Run JUnit tests
-                        bench    Run JMH Benchmarks
+                        build    Compile the project, or with --all its tests and benchmarks too. In a workspace
+                                 every member is built, each as soon as the members it depends on are
+                        run      Run the project, with --cds using an AppCDS archive of its classes
+                        jar      Package the project into target/jar/app.jar, or with --uber app-standalone.jar
+                        image    Make a trimmed down Java runtime with the project in it, in target/image, with
+                                 --add-modules a,b for JDK modules only used reflectively or as services
+                        test     Run JUnit tests, optionally with --parallelism N and --shards N, or --affected for only
+                                 the tests that could have been affected by changes since the last run
+                        watch    Recompile and rerun affected tests whenever a file changes
+                        bench    Run JMH Benchmarks, or with --compare [baseline] [candidate] check the saved
+                                 results for regressions, optionally with --threshold PERCENT
                         doc      Generate Javadocs
                         idea     Generate scaffolding to open in IntelliJ
                         path     Echo the path that will be used to resolve dependencies
                         tree     Show the dependency tree of the current project
+                        lock     Resolve every scope and record the result in jproject.lock, or with --verify check
+                                 every locked file against its hash
+                        daemon   Start, stop or check on the background daemon (start|stop|status)
+                        mirror   Copy every dependency into a directory that can be used as a file:// repository
                         
+                    Available options:
+                        --timings  Print how long each phase took and write it to target/timings.json
+                        --offline  Never use the network, only the local repository and file:// repositories
+                    
                     See 'jproject help <command>' for more information on a specific command.
                     """;
 }
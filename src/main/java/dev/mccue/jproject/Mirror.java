@@ -0,0 +1,91 @@
+package dev.mccue.jproject;
+
+import dev.mccue.jproject.model.Checksums;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A maven repository in a directory, made out of files already in the local repository, for
+ * machines which can't reach the network.
+ *
+ * <p>Every file is copied along with its SHA-1 and SHA-256 checksums, laid out the same way
+ * as in any other maven repository, so both resolvers can use it as a file:// repository. A
+ * file already in the mirror is checked against its checksums instead of being copied again.
+ * Files are copied and hashed many at a time.
+ */
+final class Mirror {
+    private Mirror() {}
+
+    /**
+     * What populating a mirror did.
+     *
+     * @param copied Files which were copied into the mirror.
+     * @param unchanged Files which were already in the mirror and matched their checksums.
+     * @param bytesCopied How many bytes were copied.
+     */
+    record Result(int copied, int unchanged, long bytesCopied) {}
+
+    /**
+     * @param files Files in the local repository.
+     * @param localRepository The local repository.
+     * @param mirrorDir The directory to put them in.
+     */
+    static Result populate(List<Path> files, Path localRepository, Path mirrorDir) {
+        var copied = new AtomicInteger();
+        var unchanged = new AtomicInteger();
+        var bytesCopied = new AtomicLong();
+
+        files.parallelStream().forEach(file -> {
+            var target = mirrorDir.resolve(localRepository.relativize(file).toString());
+            try {
+                if (upToDate(file, target)) {
+                    unchanged.incrementAndGet();
+                    return;
+                }
+
+                Files.createDirectories(target.getParent());
+                var temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+                try {
+                    Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING);
+                    Checksums.write(target, Checksums.hash(temp, EnumSet.allOf(Checksums.Algorithm.class)));
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                copied.incrementAndGet();
+                bytesCopied.addAndGet(Files.size(target));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return new Result(copied.get(), unchanged.get(), bytesCopied.get());
+    }
+
+    /**
+     * @return Whether the mirror already has the file, with every checksum in place and matching.
+     */
+    private static boolean upToDate(Path file, Path target) throws IOException {
+        if (!Files.isRegularFile(target) || Files.size(target) != Files.size(file)) {
+            return false;
+        }
+        for (var algorithm : Checksums.Algorithm.values()) {
+            if (!Files.isRegularFile(algorithm.sidecar(target))) {
+                return false;
+            }
+        }
+        try {
+            return Checksums.verify(target);
+        } catch (Checksums.ChecksumException e) {
+            return false;
+        }
+    }
+}
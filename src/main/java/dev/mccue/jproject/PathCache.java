@@ -0,0 +1,175 @@
+package dev.mccue.jproject;
+
+import dev.mccue.jproject.model.Basis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A cache from the fingerprint of a {@link Basis} to the path it resolves to.
+ *
+ * <p>Every entry is its own small file named after the fingerprint, so a lookup is a
+ * single read and never needs to load the rest of the cache. Entries are written to
+ * a temporary file and moved into place, so readers never see half an entry, and
+ * writers hold a file lock so concurrent jproject processes don't trip over each
+ * other while evicting. The least recently used entries are evicted once there are
+ * too many of them or they take up too much space.
+ */
+final class PathCache {
+    private static final int MAX_ENTRIES = 512;
+    private static final long MAX_BYTES = 16 * 1024 * 1024;
+    private static final String LOCK_FILE = ".lock";
+
+    private final Path directory;
+    private final Map<String, String> memory;
+    private final Object writeLock;
+
+    PathCache(Path directory) {
+        this.directory = directory;
+        this.memory = new ConcurrentHashMap<>();
+        this.writeLock = new Object();
+    }
+
+    /**
+     * @return The path for the basis, resolving it only if it isn't already cached.
+     */
+    String path(Basis basis) {
+        return path(basis, Basis::path);
+    }
+
+    /**
+     * @return The path for the basis, using the given function to resolve it only if
+     * it isn't already cached.
+     */
+    String path(Basis basis, Function<Basis, String> resolve) {
+        return path(basis.fingerprint(), () -> resolve.apply(basis));
+    }
+
+    /**
+     * @return The path under the given key, using the given supplier to resolve it only if
+     * it isn't already cached. The key has to capture everything that went into the path.
+     */
+    String path(String key, Supplier<String> resolve) {
+        var path = this.memory.get(key);
+        if (path == null) {
+            path = Timings.time("read path cache", () -> read(key));
+            if (path == null) {
+                Timings.count("path cache misses", 1);
+                path = resolve.get();
+                var resolved = path;
+                Timings.time("write path cache", () -> write(key, resolved));
+            }
+            else {
+                Timings.count("path cache hits", 1);
+            }
+            this.memory.put(key, path);
+        }
+        else {
+            Timings.count("path cache hits", 1);
+        }
+        return path;
+    }
+
+    private String read(String key) {
+        var entry = this.directory.resolve(key);
+        try {
+            var path = Files.readString(entry, StandardCharsets.UTF_8);
+            // If something cleared out the local maven repository the entry is worthless.
+            for (var root : path.split(File.pathSeparator)) {
+                if (root.endsWith(".jar") && !Files.exists(Path.of(root))) {
+                    return null;
+                }
+            }
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return path;
+        } catch (NoSuchFileException | NotDirectoryException e) {
+            return null;
+        } catch (FileSystemException e) {
+            // The cache used to be a single serialized map. Looking inside that file fails with a
+            // plain "Not a directory", and the next write replaces it.
+            if (Files.isRegularFile(this.directory)) {
+                return null;
+            }
+            throw new UncheckedIOException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(String key, String path) {
+        try {
+            if (Files.isRegularFile(this.directory)) {
+                // The cache used to be a single serialized map.
+                Files.delete(this.directory);
+            }
+            Files.createDirectories(this.directory);
+
+            synchronized (this.writeLock) {
+                try (var lockChannel = FileChannel.open(
+                        this.directory.resolve(LOCK_FILE),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE
+                )) {
+                    // Released when the channel is closed
+                    lockChannel.lock();
+                    var temp = Files.createTempFile(this.directory, key, ".tmp");
+                    try {
+                        Files.writeString(temp, path, StandardCharsets.UTF_8);
+                        Files.move(
+                                temp,
+                                this.directory.resolve(key),
+                                StandardCopyOption.ATOMIC_MOVE,
+                                StandardCopyOption.REPLACE_EXISTING
+                        );
+                    } finally {
+                        Files.deleteIfExists(temp);
+                    }
+                    evict();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Entry(Path file, long size, FileTime lastUsed) {}
+
+    private void evict() throws IOException {
+        var entries = new ArrayList<Entry>();
+        long totalSize = 0;
+        try (var files = Files.list(this.directory)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                var name = file.getFileName().toString();
+                if (name.equals(LOCK_FILE) || name.endsWith(".tmp")) {
+                    continue;
+                }
+                try {
+                    var entry = new Entry(file, Files.size(file), Files.getLastModifiedTime(file));
+                    entries.add(entry);
+                    totalSize += entry.size();
+                } catch (NoSuchFileException e) {
+                    // Someone else got to it first
+                }
+            }
+        }
+
+        entries.sort(Comparator.comparing(Entry::lastUsed));
+        var i = 0;
+        while (entries.size() - i > MAX_ENTRIES || totalSize > MAX_BYTES) {
+            var entry = entries.get(i++);
+            Files.deleteIfExists(entry.file());
+            totalSize -= entry.size();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package dev.mccue.jproject;
+
+import dev.mccue.jproject.model.ApplicationModule;
+import dev.mccue.jproject.model.AvailableDuring;
+import dev.mccue.jproject.model.Basis;
+import dev.mccue.jproject.model.DependencyGraph;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The paths of a project's dependencies for each {@link AvailableDuring}.
+ *
+ * <p>Rather than resolving every scope on its own, the dependencies of all of them are
+ * resolved together the first time any path isn't already in the cache, and each path
+ * is projected out of that one graph. The members of a workspace share a single graph,
+ * so a dependency is only resolved once and has the same version in every member.
+ */
+final class ProjectPaths {
+    private final ApplicationModule project;
+    private final PathCache pathCache;
+    private final SharedGraph sharedGraph;
+
+    /**
+     * The graph of every dependency of one or more projects.
+     */
+    static final class SharedGraph {
+        private final List<ApplicationModule> projects;
+        private Basis basis;
+        private DependencyGraph graph;
+
+        SharedGraph(List<ApplicationModule> projects) {
+            this.projects = List.copyOf(projects);
+        }
+
+        private synchronized Basis basis() {
+            if (this.basis == null) {
+                var builder = Basis.usingMavenCentral();
+                for (var project : this.projects) {
+                    builder.addRepositories(project.repositories())
+                            .addDependencies(project.allDependencies());
+                }
+                this.basis = Timings.time("build basis", builder::build);
+            }
+            return this.basis;
+        }
+
+        private synchronized DependencyGraph graph() {
+            if (this.graph == null) {
+                this.graph = Timings.time("resolve dependencies", basis()::graph);
+            }
+            return this.graph;
+        }
+    }
+
+    ProjectPaths(ApplicationModule project, PathCache pathCache) {
+        this(project, pathCache, new SharedGraph(List.of(project)));
+    }
+
+    ProjectPaths(ApplicationModule project, PathCache pathCache, SharedGraph sharedGraph) {
+        this.project = project;
+        this.pathCache = pathCache;
+        this.sharedGraph = sharedGraph;
+    }
+
+    /**
+     * @return The path for the given scope, ready to be used as a CLI argument.
+     */
+    String path(AvailableDuring availableDuring) {
+        var dependencies = this.project.dependencies(availableDuring);
+        var basis = Timings.time("build basis", () -> Basis.usingMavenCentral()
+                .addRepositories(this.project.repositories())
+                .addDependencies(dependencies)
+                .build());
+        // Which versions win depends on every scope of every project sharing the graph.
+        var key = Hashes.sha256(this.sharedGraph.basis().fingerprint() + " " + basis.fingerprint());
+        return this.pathCache.path(
+                key,
+                () -> this.sharedGraph.graph().paths(dependencies).stream()
+                        .map(Path::toString)
+                        .collect(Collectors.joining(File.pathSeparator))
+        );
+    }
+}
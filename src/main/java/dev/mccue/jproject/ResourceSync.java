@@ -0,0 +1,166 @@
+package dev.mccue.jproject;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the resources in a classes directory in line with the non-java files in a source
+ * directory, only touching the ones that changed since the last sync.
+ *
+ * <p>A file whose size and modification time match what was recorded last time is left alone
+ * without being read. When only the modification time moved, its hash decides. Changed files are
+ * hard linked when the file system allows it, so even large resources cost next to nothing, and
+ * copied otherwise. Files that were removed from the source directory are removed from the
+ * classes directory, but nothing the sync didn't put there is ever deleted.
+ */
+final class ResourceSync {
+    private final Path sourceDir;
+    private final Path targetDir;
+    private final Path stateFile;
+
+    ResourceSync(Path sourceDir, Path targetDir, Path stateFile) {
+        this.sourceDir = sourceDir;
+        this.targetDir = targetDir;
+        this.stateFile = stateFile;
+    }
+
+    /**
+     * What we remember about a synced file.
+     */
+    private record FileRecord(long size, long lastModified, String sha256) implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    private record State(Map<String, FileRecord> files) implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * How much work a sync did.
+     *
+     * @param linked Files that were hard linked into place.
+     * @param copied Files that had to be copied.
+     * @param bytesCopied The total size of the copied files.
+     * @param deleted Files that were removed.
+     * @param unchanged Files that were already up to date.
+     */
+    record Result(int linked, int copied, long bytesCopied, int deleted, int unchanged) {}
+
+    Result sync() throws IOException {
+        var index = SourceIndex.load();
+        var current = new TreeMap<String, SourceIndex.Entry>();
+        for (var entry : index.entries(this.sourceDir)) {
+            if (!entry.path().toString().endsWith(".java")) {
+                current.put(relativeName(entry.path()), entry);
+            }
+        }
+
+        var previous = readState();
+        var records = new ConcurrentHashMap<String, FileRecord>();
+        var linked = new LongAdder();
+        var copied = new LongAdder();
+        var bytesCopied = new LongAdder();
+        var unchanged = new LongAdder();
+        var canLink = new AtomicBoolean(true);
+
+        try {
+            current.entrySet().parallelStream().forEach(entry -> {
+                try {
+                    var source = entry.getValue().path();
+                    var target = this.targetDir.resolve(entry.getKey());
+                    var size = entry.getValue().size();
+                    var lastModified = entry.getValue().lastModified();
+                    var before = previous.files().get(entry.getKey());
+                    var targetIntact = Files.isRegularFile(target) && Files.size(target) == size;
+
+                    if (before != null && targetIntact && before.size() == size && before.lastModified() == lastModified) {
+                        records.put(entry.getKey(), before);
+                        unchanged.increment();
+                        return;
+                    }
+
+                    var sha256 = index.sha256(source);
+                    if (before != null && targetIntact && before.sha256().equals(sha256)) {
+                        records.put(entry.getKey(), new FileRecord(size, lastModified, sha256));
+                        unchanged.increment();
+                        return;
+                    }
+
+                    Files.createDirectories(target.getParent());
+                    Files.deleteIfExists(target);
+                    if (canLink.get() && link(source, target)) {
+                        linked.increment();
+                    }
+                    else {
+                        canLink.set(false);
+                        Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+                        copied.increment();
+                        bytesCopied.add(size);
+                    }
+                    records.put(entry.getKey(), new FileRecord(size, lastModified, sha256));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        var deleted = 0;
+        for (var name : previous.files().keySet()) {
+            if (!current.containsKey(name) && Files.deleteIfExists(this.targetDir.resolve(name))) {
+                deleted++;
+            }
+        }
+
+        writeState(new State(new TreeMap<>(records)));
+        return new Result(
+                (int) linked.sum(),
+                (int) copied.sum(),
+                bytesCopied.sum(),
+                deleted,
+                (int) unchanged.sum()
+        );
+    }
+
+    /**
+     * @return Whether the target could be made a hard link to the source. Links fail across
+     * file systems and on some file systems entirely.
+     */
+    private static boolean link(Path source, Path target) {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    private String relativeName(Path file) {
+        return this.sourceDir.normalize().relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private State readState() {
+        try (var fis = new FileInputStream(this.stateFile.toFile());
+             var ois = new ObjectInputStream(fis)) {
+            return (State) ois.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // A missing or unreadable state just means syncing everything.
+            return new State(Map.of());
+        }
+    }
+
+    private void writeState(State state) throws IOException {
+        Files.createDirectories(this.stateFile.getParent());
+        try (var fos = new FileOutputStream(this.stateFile.toFile());
+             var oos = new ObjectOutputStream(fos)) {
+            oos.writeObject(state);
+        }
+    }
+}
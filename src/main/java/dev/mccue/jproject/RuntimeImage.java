@@ -0,0 +1,171 @@
+package dev.mccue.jproject;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.spi.ToolProvider;
+import java.util.stream.Collectors;
+
+/**
+ * A trimmed down Java runtime with an application and its dependencies in it.
+ *
+ * <p>Only the JDK modules the application needs go into the runtime. Those are what jdeps finds
+ * the jars referring to, along with whatever modular jars require in their module descriptors.
+ * Neither sees modules which are only found as service providers or loaded reflectively, so the
+ * small provider modules most applications end up needing, like the one TLS gets its elliptic
+ * curves from, are always included, and anything else has to be asked for. The runtime gets a
+ * CDS archive of its own classes. Everything is put on the class path, so starting the
+ * application doesn't resolve any modules beyond the ones in the runtime.
+ */
+final class RuntimeImage {
+    private RuntimeImage() {}
+
+    private static final String LAUNCHER_NAME = "app";
+
+    /**
+     * Modules which only provide services, so nothing refers to them, but which are small and
+     * which applications fail without - TLS handshakes, charsets beyond the standard ones and
+     * zip file systems. Locale data is left out since it is ten times the size of the rest.
+     */
+    private static final List<String> PROVIDER_MODULES = List.of(
+            "jdk.charsets",
+            "jdk.crypto.ec",
+            "jdk.zipfs"
+    );
+
+    /**
+     * @param extraModules Modules to include whether or not anything seems to need them.
+     * @return The JDK modules needed to run the given jars.
+     */
+    static Set<String> requiredModules(List<Path> jars, List<String> extraModules) {
+        var system = ModuleFinder.ofSystem();
+        var modules = new TreeSet<String>();
+        modules.add("java.base");
+        PROVIDER_MODULES.stream()
+                .filter(name -> system.find(name).isPresent())
+                .forEach(modules::add);
+        for (var name : extraModules) {
+            if (system.find(name).isEmpty()) {
+                throw new IllegalArgumentException(name + " is not a module in this JDK");
+            }
+            modules.add(name);
+        }
+
+        var arguments = new ArrayList<>(List.of(
+                "--print-module-deps",
+                "--ignore-missing-deps",
+                "-q",
+                "--multi-release", Integer.toString(Runtime.version().feature()),
+                "--class-path", jars.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator))
+        ));
+        jars.forEach(jar -> arguments.add(jar.toString()));
+        var output = Timings.time("jdeps", () -> runTool("jdeps", arguments));
+        for (var module : output.trim().split(",")) {
+            if (!module.isBlank()) {
+                modules.add(module.trim());
+            }
+        }
+
+        ModuleFinder.of(jars.toArray(new Path[0])).findAll().stream()
+                .map(ModuleReference::descriptor)
+                .flatMap(descriptor -> descriptor.requires().stream())
+                .filter(requires -> !requires.modifiers().contains(ModuleDescriptor.Requires.Modifier.STATIC))
+                .map(ModuleDescriptor.Requires::name)
+                .filter(name -> system.find(name).isPresent())
+                .forEach(modules::add);
+        return modules;
+    }
+
+    /**
+     * Makes a runtime with the given modules in the output directory, with the jars in lib/app
+     * and a launcher in bin which runs the main class.
+     */
+    static void create(List<Path> jars, String mainClass, Set<String> modules, Path output) throws IOException {
+        FileUtils.deleteDirectory(output.toFile());
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        Timings.time("jlink", () -> runTool("jlink", List.of(
+                "--add-modules", String.join(",", modules),
+                "--strip-debug",
+                "--no-header-files",
+                "--no-man-pages",
+                "--output", output.toString()
+        )));
+
+        // The archive the JDK ships with covers modules that aren't here, so the runtime
+        // needs one of its own to start as quickly.
+        var java = output.resolve("bin").resolve("java");
+        Timings.time("dump CDS archive", () -> {
+            try {
+                var exitCode = new ProcessBuilder(java.toString(), "-Xshare:dump")
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.DISCARD)
+                        .start()
+                        .waitFor();
+                if (exitCode != 0) {
+                    System.err.println("Could not create a CDS archive for the runtime, it will start more slowly");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        var appDir = output.resolve("lib").resolve(LAUNCHER_NAME);
+        Files.createDirectories(appDir);
+        var classPath = new ArrayList<String>();
+        var names = new HashSet<String>();
+        for (var jar : jars) {
+            // Jars from different groups can have the same file name.
+            var name = jar.getFileName().toString();
+            for (int i = 1; !names.add(name); i++) {
+                name = i + "-" + jar.getFileName();
+            }
+            Files.copy(jar, appDir.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+            classPath.add("$DIR/lib/" + LAUNCHER_NAME + "/" + name);
+        }
+
+        var launcher = output.resolve("bin").resolve(LAUNCHER_NAME);
+        Files.writeString(launcher, """
+                #!/bin/sh
+                DIR="$(cd "$(dirname "$0")/.." && pwd)"
+                exec "$DIR/bin/java" $JAVA_OPTS -cp "%s" %s "$@"
+                """.formatted(String.join(":", classPath), mainClass));
+        try {
+            Files.setPosixFilePermissions(launcher, PosixFilePermissions.fromString("rwxr-xr-x"));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system, so the script can't be marked as executable anyway.
+        }
+    }
+
+    /**
+     * @return What the tool printed.
+     */
+    private static String runTool(String name, List<String> arguments) {
+        var out = new StringWriter();
+        var err = new StringWriter();
+        var exitCode = ToolProvider.findFirst(name)
+                .orElseThrow(() -> new IllegalStateException(name + " is not available in this JDK"))
+                .run(new PrintWriter(out), new PrintWriter(err), arguments.toArray(new String[0]));
+        if (exitCode != 0) {
+            throw new IllegalStateException(name + " failed: " + err + out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return The launcher in a runtime made in the given directory.
+     */
+    static Path launcher(Path output) {
+        return output.resolve("bin").resolve(LAUNCHER_NAME);
+    }
+}
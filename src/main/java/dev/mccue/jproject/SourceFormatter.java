@@ -0,0 +1,199 @@
+package dev.mccue.jproject;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Formats source files with google-java-format, skipping any file which hasn't changed since
+ * it was last formatted.
+ *
+ * <p>The hash of every file as it was right after formatting is kept in a cache file. When the
+ * formatter's internals are exported to unnamed modules - jproject's manifest asks for that, so
+ * it is true whenever jproject runs with -jar - files are formatted in this process, one file per
+ * task across every core. Otherwise a single formatter process is started for all of them.
+ */
+final class SourceFormatter {
+    private SourceFormatter() {}
+
+    private static final List<String> OPTIONS = List.of("--aosp", "-r");
+
+    private static final List<String> EXPORTED_PACKAGES = List.of(
+            "com.sun.tools.javac.api",
+            "com.sun.tools.javac.file",
+            "com.sun.tools.javac.parser",
+            "com.sun.tools.javac.tree",
+            "com.sun.tools.javac.util"
+    );
+
+    private static final String CONFIGURATION_KEY = "#configuration";
+
+    /**
+     * How much formatting was done.
+     *
+     * @param formatted Files which were handed to the formatter.
+     * @param skipped Files which were already formatted.
+     * @param failed Files the formatter couldn't format, usually because they don't parse.
+     */
+    record Result(int formatted, int skipped, int failed) {}
+
+    /**
+     * @param files The files to format in place.
+     * @param formatterJar The google-java-format jar, with all of its dependencies.
+     * @param cacheFile Where the hashes of formatted files are kept.
+     */
+    static Result format(List<Path> files, Path formatterJar, Path cacheFile) throws Exception {
+        var configuration = formatterJar.getFileName() + " " + String.join(" ", OPTIONS);
+        var cache = readCache(cacheFile, configuration);
+
+        var index = SourceIndex.load();
+        var toFormat = files.stream()
+                .filter(file -> !index.sha256(file).equals(cache.getProperty(file.toString())))
+                .toList();
+        if (toFormat.isEmpty()) {
+            return new Result(0, files.size(), 0);
+        }
+
+        var inProcess = formatInProcess(toFormat, formatterJar);
+        var failed = inProcess.isPresent() ? inProcess.get() : formatInWorker(toFormat, formatterJar, cacheFile);
+        for (var file : toFormat) {
+            if (failed.contains(file)) {
+                cache.remove(file.toString());
+            }
+            else {
+                cache.setProperty(file.toString(), Hashes.sha256(file));
+            }
+        }
+
+        writeCache(cacheFile, configuration, cache);
+        return new Result(toFormat.size(), files.size() - toFormat.size(), failed.size());
+    }
+
+    /**
+     * @return The files that failed to format, or empty if the formatter can't run in this process.
+     */
+    private static Optional<Set<Path>> formatInProcess(List<Path> files, Path formatterJar) throws Exception {
+        try (var loader = new URLClassLoader(
+                new URL[] { formatterJar.toUri().toURL() },
+                ClassLoader.getPlatformClassLoader()
+        )) {
+            var compiler = ModuleLayer.boot().findModule("jdk.compiler");
+            if (compiler.isEmpty() || !EXPORTED_PACKAGES.stream().allMatch(
+                    packageName -> compiler.get().isExported(packageName, loader.getUnnamedModule())
+            )) {
+                return Optional.empty();
+            }
+
+            // Main.format leaves a thread pool of its own running on every call, so the formatter
+            // is used directly and the files are read and written here.
+            var optionsClass = loader.loadClass("com.google.googlejavaformat.java.JavaFormatterOptions");
+            var styleClass = loader.loadClass("com.google.googlejavaformat.java.JavaFormatterOptions$Style");
+            var builder = optionsClass.getMethod("builder").invoke(null);
+            builder.getClass().getMethod("style", styleClass)
+                    .invoke(builder, styleClass.getField("AOSP").get(null));
+            var options = builder.getClass().getMethod("build").invoke(builder);
+            var formatterClass = loader.loadClass("com.google.googlejavaformat.java.Formatter");
+            var formatter = formatterClass.getConstructor(optionsClass).newInstance(options);
+            var formatSource = formatterClass.getMethod("formatSourceAndFixImports", String.class);
+            var err = new PrintWriter(new OutputStreamWriter(System.err), true);
+
+            var executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                var thread = new Thread(runnable, "jproject-fmt");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                var futures = new LinkedHashMap<Path, Future<Integer>>();
+                for (var file : files) {
+                    futures.put(file, executor.submit(() -> {
+                        var source = Files.readString(file);
+                        try {
+                            var formatted = (String) formatSource.invoke(formatter, source);
+                            if (!formatted.equals(source)) {
+                                Files.writeString(file, formatted);
+                            }
+                            return 0;
+                        } catch (InvocationTargetException e) {
+                            err.println(file + ": " + e.getCause().getMessage());
+                            return 1;
+                        }
+                    }));
+                }
+
+                var failed = new HashSet<Path>();
+                for (var entry : futures.entrySet()) {
+                    try {
+                        if (entry.getValue().get() != 0) {
+                            failed.add(entry.getKey());
+                        }
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Could not run google-java-format", e.getCause());
+                    }
+                }
+                return Optional.of(failed);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Formats every file in one formatter process, with the files passed in an argument file so
+     * that there is no limit on how many there are.
+     *
+     * @return The files that failed to format. The formatter only reports failure for the whole
+     * batch, so that is either none of them or all of them.
+     */
+    private static Set<Path> formatInWorker(List<Path> files, Path formatterJar, Path cacheFile) throws Exception {
+        var argumentFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".args");
+        Files.createDirectories(argumentFile.toAbsolutePath().getParent());
+        Files.write(argumentFile, files.stream().map(Path::toString).toList());
+
+        var command = new ArrayList<String>();
+        command.add("java");
+        for (var packageName : EXPORTED_PACKAGES) {
+            command.add("--add-exports");
+            command.add("jdk.compiler/" + packageName + "=ALL-UNNAMED");
+        }
+        command.add("-jar");
+        command.add(formatterJar.toString());
+        command.addAll(OPTIONS);
+        command.add("@" + argumentFile);
+
+        var exitCode = Timings.time("forked process", () -> new ProcessBuilder(command)
+                .inheritIO()
+                .start()
+                .waitFor());
+        Files.deleteIfExists(argumentFile);
+        return exitCode == 0 ? Set.of() : new HashSet<>(files);
+    }
+
+    private static Properties readCache(Path cacheFile, String configuration) {
+        var cache = new Properties();
+        try (var in = Files.newInputStream(cacheFile)) {
+            cache.load(in);
+        } catch (IOException e) {
+            // Without a cache every file is formatted.
+        }
+        if (!configuration.equals(cache.getProperty(CONFIGURATION_KEY))) {
+            cache.clear();
+        }
+        cache.remove(CONFIGURATION_KEY);
+        return cache;
+    }
+
+    private static void writeCache(Path cacheFile, String configuration, Properties cache) throws IOException {
+        cache.setProperty(CONFIGURATION_KEY, configuration);
+        Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+        try (var out = Files.newOutputStream(cacheFile)) {
+            cache.store(out, "The hash of every file as it was right after it was formatted");
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package dev.mccue.jproject;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Every file in a project, found with a single walk which every command shares.
+ *
+ * <p>Directories are walked in parallel. Build output, version control directories and hidden
+ * directories at the top of the project are skipped, but hidden directories further down, like
+ * a {@code .well-known} among resources, are part of the project.
+ * What was seen is kept in a cache file between invocations. A directory whose modification time
+ * hasn't moved still has the same entries, so it doesn't need to be listed again, and a file
+ * whose size and modification time haven't moved still has the same hash, so it doesn't need to
+ * be read again.
+ *
+ * <p>Modification times are only trusted once they are a little while in the past, so a change
+ * made in the same instant as a walk is never missed.
+ */
+final class SourceIndex {
+    private static final long RACY_MILLIS = 2000;
+
+    private static final Set<String> VERSION_CONTROL_DIRECTORIES = Set.of(".git", ".hg", ".svn", ".bzr");
+
+    private static SourceIndex current;
+
+    /**
+     * A single file in the index.
+     *
+     * @param path The path of the file, relative to the working directory.
+     * @param size The size of the file in bytes.
+     * @param lastModified When the file was last modified, in milliseconds since the epoch.
+     */
+    record Entry(Path path, long size, long lastModified) {}
+
+    private record DirectoryRecord(long lastModified, List<String> children) implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    private record FileRecord(long size, long lastModified, String sha256) implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    private record State(
+            Map<String, DirectoryRecord> directories,
+            Map<String, FileRecord> files
+    ) implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final Path root;
+    private final Path cacheFile;
+    private final Map<Path, Entry> entries;
+    private final Map<String, DirectoryRecord> directories;
+    private final Map<String, FileRecord> hashes;
+    private final AtomicBoolean dirty;
+
+    private SourceIndex(
+            Path root,
+            Path cacheFile,
+            Map<Path, Entry> entries,
+            Map<String, DirectoryRecord> directories,
+            Map<String, FileRecord> hashes,
+            boolean dirty
+    ) {
+        this.root = root;
+        this.cacheFile = cacheFile;
+        this.entries = entries;
+        this.directories = directories;
+        this.hashes = hashes;
+        this.dirty = new AtomicBoolean(dirty);
+    }
+
+    /**
+     * @return The index of the project in the working directory, walked at most once per
+     * invocation. It is saved when the process exits.
+     */
+    static synchronized SourceIndex load() {
+        if (current == null) {
+            current = Timings.time("index sources", () -> scan(Path.of(""), Conventions.SOURCE_INDEX_PATH));
+            Runtime.getRuntime().addShutdownHook(new Thread(SourceIndex::saveCurrent, "jproject-source-index"));
+        }
+        return current;
+    }
+
+    private static synchronized void saveCurrent() {
+        if (current != null) {
+            current.save();
+        }
+    }
+
+    /**
+     * Walks the working directory again, starting from what the current index already knows
+     * instead of the cache file.
+     */
+    static synchronized void refresh() {
+        if (current != null) {
+            var previous = current;
+            current = Timings.time("index sources", () -> scan(previous.root, previous.cacheFile, previous.state()));
+            if (previous.dirty.get()) {
+                // Whatever the previous index hadn't saved yet was carried over.
+                current.dirty.set(true);
+            }
+        }
+    }
+
+    /**
+     * Walks everything under the root, reusing whatever is still valid in the cache file.
+     */
+    static SourceIndex scan(Path root, Path cacheFile) {
+        return scan(root, cacheFile, readState(cacheFile));
+    }
+
+    /**
+     * @return Something which is the same for every path to the same directory.
+     */
+    private static Object fileKey(Path directory, BasicFileAttributes attributes) throws IOException {
+        var key = attributes.fileKey();
+        return key != null ? key : directory.toRealPath();
+    }
+
+    private static SourceIndex scan(Path root, Path cacheFile, State previous) {
+        var now = System.currentTimeMillis();
+        var entries = new ConcurrentHashMap<Path, Entry>();
+        var directories = new ConcurrentHashMap<String, DirectoryRecord>();
+        var dirty = new AtomicBoolean(false);
+        var ignored = root.resolve(Conventions.TARGET_DIR).normalize();
+
+        final class Walk extends RecursiveAction {
+            @Serial
+            private static final long serialVersionUID = 1L;
+
+            private final Path directory;
+            private final long lastModified;
+            /**
+             * The file keys of this directory and every directory above it, so a link back up
+             * the tree isn't followed forever.
+             */
+            private final Set<Object> ancestors;
+
+            Walk(Path directory, long lastModified, Set<Object> ancestors) {
+                this.directory = directory;
+                this.lastModified = lastModified;
+                this.ancestors = ancestors;
+            }
+
+            @Override
+            protected void compute() {
+                try {
+                    var key = this.directory.toString();
+                    var before = previous.directories().get(key);
+                    List<String> children;
+                    if (before != null && before.lastModified() == this.lastModified) {
+                        children = before.children();
+                    }
+                    else {
+                        children = new ArrayList<>();
+                        try (var stream = Files.newDirectoryStream(this.directory)) {
+                            for (var child : stream) {
+                                children.add(child.getFileName().toString());
+                            }
+                        }
+                        Collections.sort(children);
+                        dirty.set(true);
+                    }
+                    if (this.lastModified < now - RACY_MILLIS) {
+                        directories.put(key, new DirectoryRecord(this.lastModified, List.copyOf(children)));
+                    }
+
+                    // Every member of a workspace has its own build output next to its jproject.toml.
+                    var hasBuildOutput = children.contains(Conventions.JPROJECT_TOML_PATH.getFileName().toString());
+                    var subdirectories = new ArrayList<Walk>();
+                    for (var name : children) {
+                        var child = this.directory.resolve(name);
+                        // Links are followed, same as they are by javac and when copying resources.
+                        BasicFileAttributes attributes;
+                        try {
+                            attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                        } catch (NoSuchFileException e) {
+                            // Deleted, or a link to nothing.
+                            continue;
+                        }
+                        if (attributes.isDirectory()) {
+                            if (!VERSION_CONTROL_DIRECTORIES.contains(name)
+                                    && !(name.startsWith(".") && this.directory.equals(root))
+                                    && !child.normalize().equals(ignored)
+                                    && !(hasBuildOutput && name.equals(Conventions.TARGET_DIR.toString()))) {
+                                var fileKey = fileKey(child, attributes);
+                                if (this.ancestors.contains(fileKey)) {
+                                    continue;
+                                }
+                                var ancestors = new HashSet<>(this.ancestors);
+                                ancestors.add(fileKey);
+                                subdirectories.add(new Walk(
+                                        child,
+                                        attributes.lastModifiedTime().toMillis(),
+                                        ancestors
+                                ));
+                            }
+                        }
+                        else if (attributes.isRegularFile()) {
+                            entries.put(child, new Entry(
+                                    child,
+                                    attributes.size(),
+                                    attributes.lastModifiedTime().toMillis()
+                            ));
+                        }
+                    }
+                    invokeAll(subdirectories);
+                } catch (NoSuchFileException e) {
+                    // Deleted while we were looking at it.
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        try {
+            var attributes = Files.readAttributes(root.toAbsolutePath(), BasicFileAttributes.class);
+            new Walk(
+                    root,
+                    attributes.lastModifiedTime().toMillis(),
+                    Set.of(fileKey(root.toAbsolutePath(), attributes))
+            ).invoke();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        var hashes = new ConcurrentHashMap<String, FileRecord>();
+        previous.files().forEach((path, record) -> {
+            var entry = entries.get(Path.of(path));
+            if (entry != null && entry.size() == record.size() && entry.lastModified() == record.lastModified()) {
+                hashes.put(path, record);
+            }
+        });
+        if (hashes.size() != previous.files().size() || directories.size() != previous.directories().size()) {
+            dirty.set(true);
+        }
+
+        return new SourceIndex(root, cacheFile, entries, directories, hashes, dirty.get());
+    }
+
+    /**
+     * @return Every file in the index under the given directory which ends with the given suffix,
+     * sorted by path.
+     */
+    List<Path> files(Path directory, String suffix) {
+        var prefix = this.root.resolve(directory).normalize();
+        return this.entries.keySet().stream()
+                .filter(path -> path.startsWith(prefix) && path.toString().endsWith(suffix))
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * @return Every file in the index under the given directory, sorted by path.
+     */
+    List<Entry> entries(Path directory) {
+        var prefix = this.root.resolve(directory).normalize();
+        return this.entries.values().stream()
+                .filter(entry -> entry.path().startsWith(prefix))
+                .sorted(Comparator.comparing(Entry::path))
+                .toList();
+    }
+
+    /**
+     * @return Every file in the index which matches the given glob, relative to the root.
+     */
+    List<Path> glob(String pattern) {
+        var matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        return this.entries.keySet().stream()
+                .filter(path -> matcher.matches(path) || matcher.matches(Path.of(".").resolve(path)))
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * @return The sha256 of the file, which is only read if it changed since it was last hashed.
+     */
+    String sha256(Path file) {
+        var key = file.toString();
+        var entry = this.entries.get(file);
+        var record = this.hashes.get(key);
+        if (entry != null && record != null
+                && entry.size() == record.size() && entry.lastModified() == record.lastModified()) {
+            return record.sha256();
+        }
+
+        var sha256 = Hashes.sha256(file);
+        if (entry != null && entry.lastModified() < System.currentTimeMillis() - RACY_MILLIS) {
+            this.hashes.put(key, new FileRecord(entry.size(), entry.lastModified(), sha256));
+            this.dirty.set(true);
+        }
+        return sha256;
+    }
+
+    private State state() {
+        return new State(new HashMap<>(this.directories), new HashMap<>(this.hashes));
+    }
+
+    /**
+     * Writes out the cache, if anything in it changed and there is a project to write it into.
+     */
+    synchronized void save() {
+        if (!this.dirty.get() || !Files.isRegularFile(this.root.resolve(Conventions.JPROJECT_TOML_PATH))) {
+            return;
+        }
+        try {
+            Files.createDirectories(this.cacheFile.toAbsolutePath().getParent());
+            var temp = this.cacheFile.resolveSibling(this.cacheFile.getFileName() + ".tmp");
+            try (var fos = new FileOutputStream(temp.toFile());
+                 var oos = new ObjectOutputStream(new BufferedOutputStream(fos))) {
+                oos.writeObject(state());
+            }
+            Files.move(temp, this.cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.dirty.set(false);
+        } catch (IOException e) {
+            // The cache only saves time, so failing to write it is fine.
+        }
+    }
+
+    private static State readState(Path cacheFile) {
+        try (var fis = new FileInputStream(cacheFile.toFile());
+             var ois = new ObjectInputStream(new BufferedInputStream(fis))) {
+            return (State) ois.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // A missing or unreadable cache just means looking at everything.
+            return new State(Map.of(), Map.of());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package dev.mccue.jproject;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A handful of named tasks and the tasks each of them needs to finish first.
+ *
+ * <p>Running the graph runs every task as soon as everything it depends on has
+ * finished, so tasks which don't depend on each other run at the same time. If a
+ * task fails, nothing that depends on it is started and the failure is rethrown
+ * once everything already running has finished.
+ */
+final class TaskGraph {
+    @FunctionalInterface
+    interface Action {
+        void run() throws Exception;
+    }
+
+    private record Task(String name, List<String> dependsOn, Action action) {}
+
+    private final Map<String, Task> tasks;
+
+    TaskGraph() {
+        this.tasks = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a task to the graph. The tasks it depends on don't need to have been added yet,
+     * but they do need to be added before the graph is run.
+     */
+    TaskGraph add(String name, List<String> dependsOn, Action action) {
+        if (this.tasks.putIfAbsent(name, new Task(name, List.copyOf(dependsOn), action)) != null) {
+            throw new IllegalArgumentException("Duplicate task: " + name);
+        }
+        return this;
+    }
+
+    /**
+     * Runs every task in the graph, waiting for all of them to finish.
+     */
+    void run() throws Exception {
+        var executor = Executors.newFixedThreadPool(
+                Math.min(this.tasks.size(), Runtime.getRuntime().availableProcessors()) + 1,
+                runnable -> {
+                    var thread = new Thread(runnable, "jproject-task");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        try {
+            var futures = new HashMap<String, CompletableFuture<Void>>();
+            for (var name : this.tasks.keySet()) {
+                schedule(name, futures, new HashSet<>(), executor);
+            }
+
+            Throwable failure = null;
+            for (var future : futures.values()) {
+                try {
+                    future.join();
+                } catch (CompletionException | CancellationException e) {
+                    if (failure == null) {
+                        failure = e.getCause() == null ? e : e.getCause();
+                    }
+                }
+            }
+
+            if (failure instanceof Exception exception) {
+                throw exception;
+            }
+            else if (failure instanceof Error error) {
+                throw error;
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private CompletableFuture<Void> schedule(
+            String name,
+            Map<String, CompletableFuture<Void>> futures,
+            Set<String> visiting,
+            ExecutorService executor
+    ) {
+        var existing = futures.get(name);
+        if (existing != null) {
+            return existing;
+        }
+
+        var task = this.tasks.get(name);
+        if (task == null) {
+            throw new IllegalStateException("Unknown task: " + name);
+        }
+        if (!visiting.add(name)) {
+            throw new IllegalStateException("Cycle in tasks involving: " + name);
+        }
+
+        var dependencies = task.dependsOn().stream()
+                .map(dependency -> schedule(dependency, futures, visiting, executor))
+                .toArray(CompletableFuture<?>[]::new);
+        visiting.remove(name);
+
+        var future = CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+            try {
+                Timings.time(task.name(), task.action()::run);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        futures.put(name, future);
+        return future;
+    }
+}
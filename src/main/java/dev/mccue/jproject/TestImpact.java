@@ -0,0 +1,207 @@
+package dev.mccue.jproject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Works out which test classes could have been affected by what changed since the last test run.
+ *
+ * <p>Every compiled class is reduced to a hash and the classes it refers to, with nested classes
+ * folded into the top level class they belong to. A test class is affected if it, or anything it
+ * transitively refers to, changed. Tests that failed last time are always affected.
+ *
+ * <p>Anything that can't be traced through bytecode - a changed jar, resource or class path - makes
+ * every test affected. Classes that are only found through reflection or service loading aren't
+ * seen at all.
+ */
+final class TestImpact {
+    /**
+     * What was true of the classes the last time tests ran.
+     *
+     * @param environment A fingerprint of everything that isn't traced class by class.
+     * @param hashes The hash of every top level class.
+     * @param failed The test classes which didn't pass.
+     */
+    private record State(String environment, Map<String, String> hashes, Set<String> failed)
+            implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    private record Node(String hash, Set<String> references) {}
+
+    private final Path stateFile;
+    private final String environment;
+    private final Map<String, Node> nodes;
+
+    private TestImpact(Path stateFile, String environment, Map<String, Node> nodes) {
+        this.stateFile = stateFile;
+        this.environment = environment;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Reads every class in the given directories.
+     *
+     * @param classesDirs The directories whose classes should be traced one by one.
+     * @param classPath Everything else the tests run with.
+     * @param stateFile Where the state of the last run is kept.
+     */
+    static TestImpact analyze(List<Path> classesDirs, List<Path> classPath, Path stateFile) throws IOException {
+        var classFiles = new ArrayList<Path>();
+        var environment = new StringBuilder();
+        for (var entry : classPath) {
+            var absolute = entry.toAbsolutePath().normalize();
+            if (classesDirs.stream().anyMatch(dir -> dir.toAbsolutePath().normalize().equals(absolute))) {
+                continue;
+            }
+            environment.append(fingerprint(absolute));
+        }
+        for (var dir : classesDirs) {
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (var files = Files.walk(dir)) {
+                for (var file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    if (file.toString().endsWith(".class")) {
+                        classFiles.add(file);
+                    }
+                    else {
+                        environment.append(fingerprint(file));
+                    }
+                }
+            }
+        }
+
+        record Member(String topLevel, String name, String hash, Set<String> references) {}
+
+        var members = classFiles.parallelStream()
+                .map(file -> {
+                    try {
+                        var bytes = Files.readAllBytes(file);
+                        var classFile = ClassFile.read(bytes);
+                        return new Member(
+                                topLevel(classFile.name()),
+                                classFile.name(),
+                                Hashes.sha256(bytes),
+                                classFile.references()
+                        );
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .collect(Collectors.groupingBy(Member::topLevel));
+
+        var nodes = new HashMap<String, Node>();
+        members.forEach((topLevel, parts) -> {
+            var digest = Hashes.sha256();
+            var references = new HashSet<String>();
+            parts.stream()
+                    .sorted(Comparator.comparing(Member::name))
+                    .forEach(part -> {
+                        digest.update((part.name() + "=" + part.hash() + "\n").getBytes(StandardCharsets.UTF_8));
+                        part.references().forEach(reference -> references.add(topLevel(reference)));
+                    });
+            references.remove(topLevel);
+            nodes.put(topLevel, new Node(HexFormat.of().formatHex(digest.digest()), references));
+        });
+
+        return new TestImpact(stateFile, Hashes.sha256(environment.toString()), nodes);
+    }
+
+    /**
+     * Picks out the test classes which could have been affected since the last run. With
+     * nothing recorded yet, that is all of them.
+     *
+     * @param testClasses The binary names of the candidate test classes. A nested class is
+     *                    affected whenever the top level class it belongs to is.
+     */
+    List<String> select(List<String> testClasses) {
+        var previous = readState();
+        if (previous == null || !previous.environment().equals(this.environment)) {
+            return testClasses;
+        }
+
+        var changed = new HashSet<String>();
+        this.nodes.forEach((className, node) -> {
+            if (!node.hash().equals(previous.hashes().get(className))) {
+                changed.add(className);
+            }
+        });
+        for (var className : previous.hashes().keySet()) {
+            if (!this.nodes.containsKey(className)) {
+                changed.add(className);
+            }
+        }
+
+        var referencedBy = new HashMap<String, List<String>>();
+        this.nodes.forEach((className, node) -> {
+            for (var reference : node.references()) {
+                referencedBy.computeIfAbsent(reference, __ -> new ArrayList<>()).add(className);
+            }
+        });
+        var affected = new HashSet<String>();
+        var queue = new ArrayDeque<>(changed);
+        while (!queue.isEmpty()) {
+            var className = queue.poll();
+            if (affected.add(className)) {
+                queue.addAll(referencedBy.getOrDefault(className, List.of()));
+            }
+        }
+
+        return testClasses.stream()
+                .filter(testClass -> {
+                    var internalName = topLevel(testClass.replace('.', '/'));
+                    return affected.contains(internalName) || previous.failed().contains(internalName);
+                })
+                .toList();
+    }
+
+    /**
+     * Remembers the classes as they are now, for the next run to compare against.
+     *
+     * @param failed The binary names of the test classes which didn't pass.
+     */
+    void record(Collection<String> failed) throws IOException {
+        var hashes = new HashMap<String, String>();
+        this.nodes.forEach((className, node) -> hashes.put(className, node.hash()));
+        var failedNames = new HashSet<String>();
+        failed.forEach(className -> failedNames.add(topLevel(className.replace('.', '/'))));
+
+        Files.createDirectories(this.stateFile.getParent());
+        try (var fos = new FileOutputStream(this.stateFile.toFile());
+             var oos = new ObjectOutputStream(fos)) {
+            oos.writeObject(new State(this.environment, hashes, failedNames));
+        }
+    }
+
+    private State readState() {
+        try (var fis = new FileInputStream(this.stateFile.toFile());
+             var ois = new ObjectInputStream(fis)) {
+            return (State) ois.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // A missing or unreadable state just means running everything.
+            return null;
+        }
+    }
+
+    private static String topLevel(String internalName) {
+        var slash = internalName.lastIndexOf('/');
+        var dollar = internalName.indexOf('$', slash + 1);
+        return dollar == -1 ? internalName : internalName.substring(0, dollar);
+    }
+
+    private static String fingerprint(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return path + "\0missing\n";
+        }
+        if (Files.isDirectory(path)) {
+            return path + "\0directory\n";
+        }
+        return path + "\0" + Files.size(path) + "\0" + Files.getLastModifiedTime(path).toMillis() + "\n";
+    }
+}
@@ -0,0 +1,351 @@
+package dev.mccue.jproject;
+
+import com.google.gson.GsonBuilder;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static dev.mccue.jproject.Conventions.*;
+
+/**
+ * Runs tests across one or more worker JVMs and merges what they report.
+ *
+ * <p>Test classes are spread over the shards using how long each class took the last time
+ * it ran, so that the shards finish at about the same time. Within a worker, classes run in
+ * parallel on as many threads as asked for.
+ */
+final class TestRunner {
+    private TestRunner() {}
+
+    /**
+     * What JUnit includes by default when it scans for tests, matched against binary names.
+     */
+    private static final Pattern DEFAULT_INCLUDE = Pattern.compile("^(Test.*|.+[.$]Test.*|.*Tests?)$");
+
+    private static final Pattern ANONYMOUS_OR_LOCAL = Pattern.compile("\\$\\d");
+
+    private static final List<String> WORKER_CLASSES = List.of(
+            "dev/mccue/jproject/TestWorker.class",
+            "dev/mccue/jproject/TestWorker$Listener.class"
+    );
+
+    /**
+     * The outcome of a single test.
+     */
+    record Result(String className, String name, String status, long millis, String message, String trace) {}
+
+    /**
+     * Runs the test classes in the test classes directory.
+     *
+     * @param classPath Everything the tests need, including their own classes.
+     * @param shards How many worker JVMs to spread the tests over.
+     * @param parallelism How many test classes each worker runs at once. With 1, the project's own
+     *                    JUnit configuration decides.
+     * @param affectedOnly Whether to only run the test classes that could have been affected
+     *                     by what changed since the last run.
+     * @return Whether every test passed.
+     */
+    static boolean run(List<Path> classPath, int shards, int parallelism, boolean affectedOnly) throws Exception {
+        var classes = testClasses(TEST_CLASSES_DIR);
+        if (classes.isEmpty()) {
+            System.out.println("No test classes found");
+            return true;
+        }
+
+        var impact = Timings.time("test impact analysis", () -> TestImpact.analyze(
+                List.of(SRC_CLASSES_DIR, TEST_CLASSES_DIR),
+                classPath,
+                TEST_IMPACT_STATE_PATH
+        ));
+        if (affectedOnly) {
+            var affected = impact.select(classes);
+            System.out.println(affected.size() + " of " + classes.size() + " test classes affected by changes");
+            if (affected.isEmpty()) {
+                return true;
+            }
+            classes = affected;
+        }
+
+        var durations = readDurations();
+        var assignments = shard(classes, durations, shards);
+
+        var workerClassPath = new ArrayList<Path>();
+        workerClassPath.add(extractWorker());
+        workerClassPath.add(JUNIT_RUNNER_PATH);
+        workerClassPath.addAll(classPath);
+        var workerClassPathString = workerClassPath.stream()
+                .map(Path::toString)
+                .collect(Collectors.joining(File.pathSeparator));
+
+        var reportDirectory = Files.createDirectories(TEST_REPORT_DIR);
+        var start = System.nanoTime();
+        var processes = new ArrayList<Process>();
+        var reports = new ArrayList<Path>();
+        for (int shard = 0; shard < assignments.size(); shard++) {
+            var classesFile = reportDirectory.resolve("shard-" + shard + ".classes");
+            var report = reportDirectory.resolve("shard-" + shard + ".tsv");
+            Files.write(classesFile, assignments.get(shard));
+            Files.deleteIfExists(report);
+            reports.add(report);
+            processes.add(new ProcessBuilder(
+                    "java",
+                    "-cp",
+                    workerClassPathString,
+                    "dev.mccue.jproject.TestWorker",
+                    classesFile.toString(),
+                    report.toString(),
+                    String.valueOf(parallelism)
+            ).inheritIO().start());
+        }
+
+        var results = new ArrayList<Result>();
+        var failed = new TreeSet<String>();
+        var success = true;
+        for (int shard = 0; shard < processes.size(); shard++) {
+            var process = processes.get(shard);
+            var exitCode = Timings.time("test shard " + shard, () -> process.waitFor());
+            var report = reports.get(shard);
+            if (exitCode != 0 || !Files.exists(report)) {
+                System.err.println("Test worker for shard " + shard + " exited with " + exitCode);
+                failed.addAll(assignments.get(shard));
+                success = false;
+                continue;
+            }
+            for (var line : Files.readAllLines(report)) {
+                var result = parse(line);
+                if ("FAILED".equals(result.status())) {
+                    failed.add(result.className());
+                }
+                results.add(result);
+            }
+        }
+        var millis = (System.nanoTime() - start) / 1_000_000;
+
+        impact.record(failed);
+        writeDurations(durations, results);
+        writeReport(results, assignments, millis);
+        return printSummary(results, millis) && success;
+    }
+
+    /**
+     * @return The binary names of the classes in the directory which JUnit would pick up on its
+     * own, going by the same default pattern as scanning the class path. Nested classes count,
+     * since a static nested class is a test class of its own. JUnit works out which of them
+     * actually have tests.
+     */
+    private static List<String> testClasses(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (var files = Files.walk(directory)) {
+            return files
+                    .map(file -> directory.relativize(file).toString().replace(File.separatorChar, '/'))
+                    .filter(name -> name.endsWith(".class"))
+                    .filter(name -> !name.endsWith("module-info.class") && !name.endsWith("package-info.class"))
+                    .map(name -> name.substring(0, name.length() - ".class".length()).replace('/', '.'))
+                    // Anonymous and local classes, like Foo$1 and Foo$1Local, are never selected.
+                    .filter(name -> !ANONYMOUS_OR_LOCAL.matcher(name).find())
+                    .filter(name -> DEFAULT_INCLUDE.matcher(name).matches())
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * @return The top level class a class is nested in, or the class itself.
+     */
+    private static String topLevel(String className) {
+        var dollar = className.indexOf('$', className.lastIndexOf('.') + 1);
+        return dollar == -1 ? className : className.substring(0, dollar);
+    }
+
+    /**
+     * Spreads classes over shards, longest first, always onto the shard with the least
+     * work so far. Classes that haven't run before are assumed to take the average time.
+     * Classes nested in the same top level class always share a shard, so a {@code @Nested}
+     * class selected alongside the class around it only runs once.
+     */
+    private static List<List<String>> shard(List<String> classes, Map<String, Long> durations, int shards) {
+        var known = classes.stream()
+                .filter(durations::containsKey)
+                .mapToLong(durations::get)
+                .average()
+                .orElse(1);
+        var groups = new TreeMap<String, List<String>>();
+        var estimates = new HashMap<String, Long>();
+        classes.forEach(className -> {
+            var group = topLevel(className);
+            groups.computeIfAbsent(group, __ -> new ArrayList<>()).add(className);
+            estimates.merge(
+                    group,
+                    durations.getOrDefault(className, Math.max(1, Math.round(known))),
+                    Long::sum
+            );
+        });
+
+        var count = Math.max(1, Math.min(shards, groups.size()));
+        var assignments = new ArrayList<List<String>>();
+        var totals = new long[count];
+        for (int i = 0; i < count; i++) {
+            assignments.add(new ArrayList<>());
+        }
+        groups.keySet().stream()
+                .sorted(Comparator.comparingLong((String group) -> -estimates.get(group))
+                        .thenComparing(Comparator.naturalOrder()))
+                .forEach(group -> {
+                    var lightest = 0;
+                    for (int i = 1; i < count; i++) {
+                        if (totals[i] < totals[lightest]) {
+                            lightest = i;
+                        }
+                    }
+                    assignments.get(lightest).addAll(groups.get(group));
+                    totals[lightest] += estimates.get(group);
+                });
+        return assignments;
+    }
+
+    /**
+     * Copies the worker's classes out of jproject so the worker JVM doesn't need all of
+     * jproject on its class path. Each version of the worker gets its own directory.
+     */
+    private static Path extractWorker() throws IOException {
+        var contents = new LinkedHashMap<String, byte[]>();
+        for (var name : WORKER_CLASSES) {
+            try (var in = Objects.requireNonNull(
+                    TestRunner.class.getResourceAsStream("/" + name),
+                    "The test worker should be on the classpath"
+            )) {
+                contents.put(name, in.readAllBytes());
+            }
+        }
+
+        var digest = Hashes.sha256();
+        contents.values().forEach(digest::update);
+        var directory = TEST_WORKER_DIRECTORY.resolve(HexFormat.of().formatHex(digest.digest()));
+        if (!Files.isDirectory(directory)) {
+            var temp = Files.createDirectories(TEST_WORKER_DIRECTORY).resolve(directory.getFileName() + ".tmp");
+            for (var entry : contents.entrySet()) {
+                var file = temp.resolve(entry.getKey());
+                Files.createDirectories(file.getParent());
+                Files.write(file, entry.getValue());
+            }
+            try {
+                Files.move(temp, directory);
+            } catch (IOException e) {
+                // Another jproject got there first.
+                if (!Files.isDirectory(directory)) {
+                    throw e;
+                }
+            }
+        }
+        return directory;
+    }
+
+    private static Result parse(String line) {
+        var fields = line.split("\t", -1);
+        return new Result(
+                unescape(fields[0]),
+                unescape(fields[1]),
+                fields[2],
+                Long.parseLong(fields[3]),
+                fields[4].isEmpty() ? null : unescape(fields[4]),
+                fields[5].isEmpty() ? null : unescape(fields[5])
+        );
+    }
+
+    private static String unescape(String value) {
+        var result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                var next = value.charAt(++i);
+                result.append(switch (next) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> next;
+                });
+            }
+            else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static Map<String, Long> readDurations() {
+        var properties = new Properties();
+        try (var in = Files.newInputStream(TEST_DURATIONS_PATH)) {
+            properties.load(in);
+        } catch (IOException e) {
+            // No history just means even shards by count.
+        }
+        var durations = new HashMap<String, Long>();
+        properties.forEach((key, value) -> durations.put((String) key, Long.parseLong((String) value)));
+        return durations;
+    }
+
+    private static void writeDurations(Map<String, Long> previous, List<Result> results) throws IOException {
+        var durations = new TreeMap<>(previous);
+        var measured = new HashMap<String, Long>();
+        for (var result : results) {
+            measured.merge(result.className(), result.millis(), Long::sum);
+        }
+        durations.putAll(measured);
+
+        var properties = new Properties();
+        durations.forEach((className, millis) -> properties.setProperty(className, String.valueOf(millis)));
+        Files.createDirectories(TEST_DURATIONS_PATH.getParent());
+        try (var out = Files.newOutputStream(TEST_DURATIONS_PATH)) {
+            properties.store(out, "How long each test class took the last time it ran");
+        }
+    }
+
+    private static void writeReport(List<Result> results, List<List<String>> assignments, long millis) throws IOException {
+        var report = new LinkedHashMap<String, Object>();
+        report.put("millis", millis);
+        report.put("shards", assignments);
+        report.put("tests", results);
+        Files.writeString(
+                TEST_REPORT_DIR.resolve("report.json"),
+                new GsonBuilder().setPrettyPrinting().create().toJson(report)
+        );
+    }
+
+    /**
+     * @return Whether nothing failed.
+     */
+    private static boolean printSummary(List<Result> results, long millis) {
+        var counts = new TreeMap<String, Integer>();
+        for (var result : results) {
+            counts.merge(result.status(), 1, Integer::sum);
+            if ("FAILED".equals(result.status())) {
+                System.out.println();
+                System.out.println("[" + result.status() + "] " + result.className() + " > " + result.name());
+                if (result.trace() != null) {
+                    System.out.println(result.trace().stripTrailing());
+                }
+                else if (result.message() != null) {
+                    System.out.println(result.message());
+                }
+            }
+        }
+
+        var failed = counts.getOrDefault("FAILED", 0);
+        System.out.println();
+        System.out.printf(
+                "%d tests successful, %d failed, %d skipped in %d ms%n",
+                counts.getOrDefault("SUCCESSFUL", 0),
+                failed,
+                // Aborted tests are the ones whose assumptions didn't hold.
+                counts.getOrDefault("SKIPPED", 0) + counts.getOrDefault("ABORTED", 0),
+                millis
+        );
+        return failed == 0;
+    }
+}
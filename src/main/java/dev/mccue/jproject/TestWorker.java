@@ -0,0 +1,129 @@
+package dev.mccue.jproject;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs a shard of test classes through the JUnit Platform Launcher. This runs in its own JVM
+ * alongside the tests, so it can only use the JDK and JUnit. {@link TestRunner} copies it out
+ * of jproject's jar for that.
+ *
+ * <p>Usage: {@code TestWorker <file listing test classes> <report file> <parallelism>}
+ *
+ * <p>The report has one tab separated line per test or failed container:
+ * {@code class, name, status, millis, message, stack trace}, with tabs and newlines escaped.
+ */
+public final class TestWorker {
+    private TestWorker() {}
+
+    public static void main(String[] args) throws Exception {
+        var classes = Files.readAllLines(Path.of(args[0])).stream()
+                .filter(className -> !className.isBlank())
+                .map(DiscoverySelectors::selectClass)
+                .toList();
+        var report = Path.of(args[1]);
+        var parallelism = Integer.parseInt(args[2]);
+
+        var request = LauncherDiscoveryRequestBuilder.request()
+                .selectors(classes);
+        // Unless asked to run classes concurrently, the project's own junit-platform.properties decide.
+        if (parallelism > 1) {
+            request.configurationParameter("junit.jupiter.execution.parallel.enabled", "true")
+                    // Classes run alongside each other, but the tests within a class don't.
+                    .configurationParameter("junit.jupiter.execution.parallel.mode.default", "same_thread")
+                    .configurationParameter("junit.jupiter.execution.parallel.mode.classes.default", "concurrent")
+                    .configurationParameter("junit.jupiter.execution.parallel.config.strategy", "fixed")
+                    .configurationParameter("junit.jupiter.execution.parallel.config.fixed.parallelism", String.valueOf(parallelism));
+        }
+
+        var listener = new Listener();
+        LauncherFactory.create().execute(request.build(), listener);
+        Files.write(report, listener.lines);
+    }
+
+    private static final class Listener implements TestExecutionListener {
+        private final Map<String, Long> started = new ConcurrentHashMap<>();
+        private final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void executionStarted(TestIdentifier testIdentifier) {
+            this.started.put(testIdentifier.getUniqueId(), System.nanoTime());
+        }
+
+        @Override
+        public void executionSkipped(TestIdentifier testIdentifier, String reason) {
+            if (testIdentifier.isTest()) {
+                line(testIdentifier, "SKIPPED", 0, reason, null);
+            }
+        }
+
+        @Override
+        public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult result) {
+            var start = this.started.remove(testIdentifier.getUniqueId());
+            var millis = start == null ? 0 : (System.nanoTime() - start) / 1_000_000;
+            var failed = result.getStatus() != TestExecutionResult.Status.SUCCESSFUL;
+            // Containers only show up when they fail, like when a @BeforeAll throws.
+            if (!testIdentifier.isTest() && !failed) {
+                return;
+            }
+            var throwable = result.getThrowable().orElse(null);
+            String trace = null;
+            if (throwable != null) {
+                var writer = new StringWriter();
+                throwable.printStackTrace(new PrintWriter(writer));
+                trace = writer.toString();
+            }
+            line(
+                    testIdentifier,
+                    result.getStatus().name(),
+                    millis,
+                    throwable == null ? null : String.valueOf(throwable.getMessage()),
+                    trace
+            );
+        }
+
+        private void line(TestIdentifier testIdentifier, String status, long millis, String message, String trace) {
+            var source = testIdentifier.getSource().orElse(null);
+            var className = source instanceof MethodSource methodSource
+                    ? methodSource.getClassName()
+                    : source instanceof ClassSource classSource
+                    ? classSource.getClassName()
+                    : "";
+            this.lines.add(String.join("\t",
+                    escape(className),
+                    escape(testIdentifier.getDisplayName()),
+                    status,
+                    String.valueOf(millis),
+                    escape(message),
+                    escape(trace)
+            ));
+        }
+
+        private static String escape(String value) {
+            if (value == null) {
+                return "";
+            }
+            return value
+                    .replace("\\", "\\\\")
+                    .replace("\t", "\\t")
+                    .replace("\n", "\\n")
+                    .replace("\r", "\\r");
+        }
+    }
+}
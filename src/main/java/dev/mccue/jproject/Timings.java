@@ -0,0 +1,138 @@
+package dev.mccue.jproject;
+
+import com.google.gson.GsonBuilder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of how long each phase of a command took, along with a handful of counters.
+ *
+ * <p>Every phase is also emitted as a {@link PhaseEvent} so it shows up in flight recordings.
+ * Phases can run at the same time, so the durations of different phases can add up to more
+ * than the wall clock time of the command.
+ */
+final class Timings {
+    private Timings() {}
+
+    private static final long START = System.nanoTime();
+
+    private static final Map<String, Phase> PHASES = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+
+    private record Phase(LongAdder nanos, LongAdder count) {}
+
+    @Name("dev.mccue.jproject.Phase")
+    @Label("jproject Phase")
+    @Category("jproject")
+    @Description("A phase of a jproject command")
+    static final class PhaseEvent extends jdk.jfr.Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    @FunctionalInterface
+    interface Timed<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    @FunctionalInterface
+    interface TimedAction<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * Runs the body as part of the given phase.
+     */
+    static <T, E extends Exception> T time(String phase, Timed<T, E> body) throws E {
+        var event = new PhaseEvent();
+        event.phase = phase;
+        event.begin();
+        var start = System.nanoTime();
+        try {
+            return body.run();
+        } finally {
+            var recorded = PHASES.computeIfAbsent(phase, __ -> new Phase(new LongAdder(), new LongAdder()));
+            recorded.nanos().add(System.nanoTime() - start);
+            recorded.count().increment();
+            event.commit();
+        }
+    }
+
+    /**
+     * Runs the body as part of the given phase.
+     */
+    static <E extends Exception> void time(String phase, TimedAction<E> body) throws E {
+        Timings.<Void, E>time(phase, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /**
+     * Adds to the named counter.
+     */
+    static void count(String counter, long amount) {
+        COUNTERS.computeIfAbsent(counter, __ -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Prints a breakdown of every phase and counter, and writes the same as JSON to the given file,
+     * once the process exits. That includes exiting through System.exit.
+     */
+    static void reportOnExit(List<String> command, Path jsonFile) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> report(command, jsonFile), "jproject-timings"));
+    }
+
+    private static void report(List<String> command, Path jsonFile) {
+        var wallMillis = (System.nanoTime() - START) / 1_000_000.0;
+
+        var phases = new ArrayList<Map<String, Object>>();
+        PHASES.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> -entry.getValue().nanos().sum()))
+                .forEach(entry -> {
+                    var phase = new LinkedHashMap<String, Object>();
+                    phase.put("name", entry.getKey());
+                    phase.put("count", entry.getValue().count().sum());
+                    phase.put("millis", entry.getValue().nanos().sum() / 1_000_000.0);
+                    phases.add(phase);
+                });
+        var counters = new TreeMap<String, Long>();
+        COUNTERS.forEach((name, value) -> counters.put(name, value.sum()));
+
+        System.err.printf("%nTimings (%.1f ms wall clock)%n", wallMillis);
+        for (var phase : phases) {
+            System.err.printf(
+                    "  %-32s %10.1f ms  x%d%n",
+                    phase.get("name"),
+                    (double) phase.get("millis"),
+                    (long) phase.get("count")
+            );
+        }
+        if (!counters.isEmpty()) {
+            System.err.println("Counters");
+            counters.forEach((name, value) -> System.err.printf("  %-32s %10d%n", name, value));
+        }
+
+        var report = new LinkedHashMap<String, Object>();
+        report.put("command", command);
+        report.put("wallMillis", wallMillis);
+        report.put("phases", phases);
+        report.put("counters", counters);
+        try {
+            Files.createDirectories(jsonFile.getParent());
+            Files.writeString(jsonFile, new GsonBuilder().setPrettyPrinting().create().toJson(report));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package dev.mccue.jproject;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Waits for files in a project to change.
+ *
+ * <p>A WatchService only watches single directories, so every directory under the watched ones
+ * is registered, including directories created later. The working directory itself is watched too,
+ * so that watched directories which don't exist yet are picked up once they do, and so that changes
+ * to individual top level files can be seen.
+ */
+final class Watcher implements AutoCloseable {
+    private final WatchService watchService;
+    private final Set<Path> directories;
+    private final Set<Path> files;
+    private final Map<WatchKey, Path> keys;
+
+    /**
+     * @param directories Directories in the working directory to watch everything under.
+     * @param files Files in the working directory to watch.
+     */
+    Watcher(List<Path> directories, List<Path> files) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.directories = normalize(directories);
+        this.files = normalize(files);
+        this.keys = new HashMap<>();
+
+        register(Path.of(""));
+        for (var directory : this.directories) {
+            registerAll(directory);
+        }
+    }
+
+    private static Set<Path> normalize(List<Path> paths) {
+        var normalized = new LinkedHashSet<Path>();
+        paths.forEach(path -> normalized.add(path.normalize()));
+        return normalized;
+    }
+
+    private void register(Path directory) throws IOException {
+        this.keys.put(directory.register(this.watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), directory);
+    }
+
+    private void registerAll(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                register(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Blocks until something changes, then keeps collecting changes until none have come in for
+     * the quiet period, so that a burst of saves - or a branch switch - is handled all at once.
+     *
+     * @return Every path which changed. If changes were lost, that is every watched directory.
+     */
+    Set<Path> await(Duration quietPeriod) throws IOException, InterruptedException {
+        var changed = new TreeSet<Path>();
+        var key = this.watchService.take();
+        while (key != null) {
+            handle(key, changed);
+            key = this.watchService.poll(quietPeriod.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return changed;
+    }
+
+    private void handle(WatchKey key, Set<Path> changed) throws IOException {
+        var directory = this.keys.get(key);
+        for (var event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                changed.addAll(this.directories);
+                changed.addAll(this.files);
+                continue;
+            }
+
+            var path = directory.resolve((Path) event.context());
+            if (directory.toString().isEmpty() && !this.directories.contains(path) && !this.files.contains(path)) {
+                continue;
+            }
+
+            changed.add(path);
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // Anything created in the new directory before it was registered won't get an event.
+                registerAll(path);
+                try (var files = Files.walk(path)) {
+                    files.forEach(changed::add);
+                }
+            }
+        }
+        if (!key.reset()) {
+            this.keys.remove(key);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+    }
+}
@@ -0,0 +1,149 @@
+package dev.mccue.jproject;
+
+import dev.mccue.jproject.model.AvailableDuring;
+import dev.mccue.jproject.model.Scope;
+import dev.mccue.jproject.model.Workspace;
+import org.apache.commons.io.FileUtils;
+
+import java.io.Serial;
+import java.nio.file.Path;
+import java.util.*;
+
+import static dev.mccue.jproject.Conventions.*;
+
+/**
+ * Builds every member of a workspace, each one as soon as the members it depends on are built,
+ * so members which don't depend on each other compile at the same time.
+ *
+ * <p>Each member's sources, classes and compile state live in its own directory, laid out the
+ * same as a project on its own. A member compiles against the classes of every member it
+ * depends on, directly or not, and against their dependencies. Every member's dependencies are
+ * projected out of one graph resolved for the whole workspace, and cached in the workspace's
+ * path cache.
+ */
+final class WorkspaceBuild {
+    private final Workspace workspace;
+    private final Map<Path, ProjectPaths> paths;
+
+    /**
+     * Thrown when a member fails to compile. The compiler has already said why.
+     */
+    private static final class MemberFailedException extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        MemberFailedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    WorkspaceBuild(Workspace workspace, PathCache pathCache) {
+        this.workspace = workspace;
+        this.paths = new HashMap<>();
+        var sharedGraph = new ProjectPaths.SharedGraph(
+                workspace.members().stream().map(Workspace.Member::module).toList()
+        );
+        for (var member : workspace.members()) {
+            this.paths.put(member.directory(), new ProjectPaths(member.module(), pathCache, sharedGraph));
+        }
+    }
+
+    /**
+     * Compiles the given scopes of every member. The tests and benchmarks of a member only wait
+     * for that member's own sources.
+     *
+     * @return Whether every member compiled. Members which depend on one that didn't aren't
+     * compiled at all.
+     */
+    boolean build(Set<Scope> scopes) throws Exception {
+        var graph = new TaskGraph();
+        for (var member : this.workspace.members()) {
+            var compileSrc = "compile " + member.directory();
+            graph.add(
+                    compileSrc,
+                    member.dependsOn().stream().map(dependency -> "compile " + dependency).toList(),
+                    () -> compile(member, Scope.NORMAL)
+            );
+            if (scopes.contains(Scope.TEST)) {
+                graph.add(compileSrc + " test", List.of(compileSrc), () -> compile(member, Scope.TEST));
+            }
+            if (scopes.contains(Scope.BENCH)) {
+                graph.add(compileSrc + " bench", List.of(compileSrc), () -> compile(member, Scope.BENCH));
+            }
+        }
+
+        try {
+            graph.run();
+            return true;
+        } catch (MemberFailedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the build output of every member, and of the workspace itself.
+     */
+    void clean() throws Exception {
+        for (var member : this.workspace.members()) {
+            FileUtils.deleteDirectory(member.directory().resolve(TARGET_DIR).toFile());
+        }
+        FileUtils.deleteDirectory(TARGET_DIR.toFile());
+    }
+
+    private void compile(Workspace.Member member, Scope scope) throws Exception {
+        var directory = member.directory();
+        var upstream = this.workspace.dependenciesOf(member);
+
+        var classPath = new ArrayList<Path>();
+        if (scope != Scope.NORMAL) {
+            classPath.add(directory.resolve(SRC_CLASSES_DIR));
+        }
+        upstream.forEach(dependency -> classPath.add(dependency.directory().resolve(SRC_CLASSES_DIR)));
+
+        var modulePath = new LinkedHashSet<>(Javac.splitPath(this.paths.get(directory).path(switch (scope) {
+            case NORMAL -> AvailableDuring.NORMAL_COMPILE_TIME;
+            case TEST -> AvailableDuring.TEST_COMPILE_TIME;
+            case BENCH -> AvailableDuring.BENCH_COMPILE_TIME;
+        })));
+        for (var dependency : upstream) {
+            modulePath.addAll(Javac.splitPath(
+                    this.paths.get(dependency.directory()).path(AvailableDuring.NORMAL_COMPILE_TIME)
+            ));
+        }
+
+        var compiler = switch (scope) {
+            case NORMAL -> new IncrementalCompiler(
+                    directory.resolve(SRC_DIR),
+                    directory.resolve(SRC_CLASSES_DIR),
+                    directory.resolve(SRC_GENERATED_SOURCES_DIR),
+                    directory.resolve(SRC_COMPILE_STATE_PATH)
+            );
+            case TEST -> new IncrementalCompiler(
+                    directory.resolve(TEST_DIR),
+                    directory.resolve(TEST_CLASSES_DIR),
+                    directory.resolve(TEST_GENERATED_SOURCES_DIR),
+                    directory.resolve(TEST_COMPILE_STATE_PATH)
+            );
+            case BENCH -> new IncrementalCompiler(
+                    directory.resolve(BENCH_DIR),
+                    directory.resolve(BENCH_CLASSES_DIR),
+                    directory.resolve(BENCH_GENERATED_SOURCES_DIR),
+                    directory.resolve(BENCH_COMPILE_STATE_PATH)
+            );
+        };
+        if (!compiler.compile(classPath, List.copyOf(modulePath), Main.JAVAC_OPTIONS)) {
+            System.err.println(directory + " failed to compile");
+            throw new MemberFailedException();
+        }
+
+        if (scope == Scope.NORMAL) {
+            var result = new ResourceSync(
+                    directory.resolve(SRC_DIR),
+                    directory.resolve(SRC_CLASSES_DIR),
+                    directory.resolve(SRC_RESOURCE_STATE_PATH)
+            ).sync();
+            Timings.count("resource files linked", result.linked());
+            Timings.count("resource files copied", result.copied());
+        }
+    }
+}
@@ -2,12 +2,17 @@ package dev.mccue.jproject.model;
 
 import com.moandjiezana.toml.Toml;
 
+import java.net.URI;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
-public record ApplicationModule(String mainClass, Map<AvailableDuring, List<MavenDependency>> deps) {
+public record ApplicationModule(
+        String mainClass,
+        Map<AvailableDuring, List<MavenDependency>> deps,
+        List<MavenRepository> repositories
+) {
     public static ApplicationModule fromFile(Path file) throws ConstructionException {
         var toml = new Toml();
         toml.read(file.toFile());
@@ -121,7 +126,42 @@ public record ApplicationModule(String mainClass, Map<AvailableDuring, List<Mave
         dependencies.entrySet().forEach(insert.apply(Scope.NORMAL));
         testOnlyDependencies.entrySet().forEach(insert.apply(Scope.TEST));
         benchOnlyDependencies.entrySet().forEach(insert.apply(Scope.BENCH));
-        return new ApplicationModule(mainClass, dependencyMap);
+        return new ApplicationModule(mainClass, dependencyMap, repositories(file, toml));
+    }
+
+    /**
+     * Reads the optional [repositories] table, where each repository is a name and a URL.
+     * Anything that isn't a URL is taken to be a directory, relative to jproject.toml, so
+     * a mirror can be checked in next to the project.
+     */
+    private static List<MavenRepository> repositories(Path file, Toml toml) throws ConstructionException {
+        if (!toml.containsTable("repositories")) {
+            return List.of();
+        }
+        var repositories = new ArrayList<MavenRepository>();
+        for (var entry : toml.getTable("repositories").entrySet()) {
+            var name = entry.getKey();
+            if (name.startsWith("\"") && name.endsWith("\"")) {
+                name = name.substring(1, name.length() - 1);
+            }
+            if (!(entry.getValue() instanceof String location) || location.isBlank()) {
+                throw new ConstructionException("\"" + name + "\" in [repositories] must be a non-empty String");
+            }
+            final URI uri;
+            if (location.contains("://")) {
+                try {
+                    uri = URI.create(location);
+                } catch (IllegalArgumentException e) {
+                    throw new ConstructionException("\"" + name + "\" in [repositories] is not a valid URL");
+                }
+            }
+            else {
+                var parent = file.toAbsolutePath().getParent();
+                uri = parent.resolve(location).normalize().toUri();
+            }
+            repositories.add(new MavenRepository(name, uri));
+        }
+        return List.copyOf(repositories);
     }
 
     public List<MavenDependency> dependencies(AvailableDuring availableDuring) {
@@ -155,8 +195,20 @@ public record ApplicationModule(String mainClass, Map<AvailableDuring, List<Mave
         };
     }
 
+    /**
+     * @return The dependencies of every scope put together. Where a dependency is declared
+     * more than once, the last declaration wins.
+     */
+    public List<MavenDependency> allDependencies() {
+        var all = new LinkedHashMap<MavenDependency.Coordinate, MavenDependency>();
+        for (var availableDuring : AvailableDuring.values()) {
+            dependencies(availableDuring).forEach(dependency -> all.put(dependency.coordinate(), dependency));
+        }
+        return List.copyOf(all.values());
+    }
+
     public static final class ConstructionException extends Exception {
-        private ConstructionException(String msg) {
+        ConstructionException(String msg) {
             super(msg);
         }
     }
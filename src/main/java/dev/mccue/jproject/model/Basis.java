@@ -1,33 +1,39 @@
 package dev.mccue.jproject.model;
 
-import clojure.java.api.Clojure;
-import clojure.lang.IFn;
-
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
-
-import static dev.mccue.jproject.model.Basis.Requires.*;
+import java.util.stream.Collectors;
 
 /**
  * A "basis" is the set of dependencies to use when constructing
  * a JVM runtime.
+ *
+ * <p>A basis only holds plain records. Its fingerprint is worked out once, when it is built,
+ * and two bases are equal when their fingerprints are. Nothing is handed to the resolver, or
+ * converted into whatever the resolver works with, until something is actually resolved.
  */
 public final class Basis implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
-    private final Object deps;
-    private final Object repos;
+    private final List<MavenDependency> dependencies;
+    private final List<MavenRepository> repositories;
     private final List<Path> paths;
+    private final Resolver resolver;
+    private final String fingerprint;
 
     private record BasisProxy(
-            Object deps,
-            Object repos,
-            List<String> paths
+            List<MavenDependency> dependencies,
+            List<MavenRepository> repositories,
+            List<String> paths,
+            String resolver
     ) implements Serializable {
         @Serial
-        private static final long serialVersionUID = 1L;
+        private static final long serialVersionUID = 3L;
 
         @Serial
         private Object readResolve() throws ObjectStreamException {
@@ -38,59 +44,95 @@ public final class Basis implements Serializable {
     @Serial
     private Object writeReplace() throws ObjectStreamException {
         return new BasisProxy(
-                this.deps,
-                this.repos,
-                this.paths.stream().map(Path::toString).toList()
+                this.dependencies,
+                this.repositories,
+                this.paths.stream().map(Path::toString).toList(),
+                this.resolver.name()
         );
     }
 
     private Basis(BasisProxy serializationProxy) {
-        this.deps = serializationProxy.deps();
-        this.repos = serializationProxy.repos();
+        this.dependencies = List.copyOf(serializationProxy.dependencies());
+        this.repositories = List.copyOf(serializationProxy.repositories());
         this.paths = serializationProxy.paths().stream()
                 .map(Path::of)
                 .toList();
+        this.resolver = Resolver.named(serializationProxy.resolver());
+        this.fingerprint = fingerprint(this.dependencies, this.repositories, this.paths, this.resolver);
     }
 
     private Basis(Builder builder) {
-        var deps = HASH_MAP.invoke();
-        for (var dependency : builder.dependencies) {
-            var coord = SYMBOL.invoke(
-                    dependency.coordinate().groupId(),
-                    dependency.coordinate().artifactId()
-            );
-            var map = HASH_MAP.invoke(
-                    KEYWORD.invoke("mvn/version"),
-                    dependency.version()
+        // Same as with a map: a later entry for the same dependency or repository wins.
+        var dependencies = new LinkedHashMap<MavenDependency.Coordinate, MavenDependency>();
+        builder.dependencies.forEach(dependency -> dependencies.put(dependency.coordinate(), dependency));
+        var repositories = new LinkedHashMap<String, MavenRepository>();
+        builder.repositories.forEach(repository -> repositories.put(repository.name(), repository));
+
+        this.dependencies = List.copyOf(dependencies.values());
+        this.repositories = List.copyOf(repositories.values());
+        this.paths = List.copyOf(builder.paths);
+        this.resolver = builder.resolver;
+        this.fingerprint = fingerprint(this.dependencies, this.repositories, this.paths, this.resolver);
+    }
+
+    /**
+     * Hashes a canonical form of everything in the basis. Dependencies and repositories
+     * are sorted, so their order does not matter, but the order of paths does.
+     */
+    private static String fingerprint(
+            List<MavenDependency> basisDependencies,
+            List<MavenRepository> basisRepositories,
+            List<Path> paths,
+            Resolver resolver
+    ) {
+        var dependencies = new TreeMap<String, String>();
+        for (var dependency : basisDependencies) {
+            dependencies.put(
+                    dependency.coordinate().groupId() + "/" + dependency.coordinate().artifactId(),
+                    dependency.version() + " " + dependency.exclusions().stream()
+                            .map(exclusion -> exclusion.groupId() + "/" + exclusion.artifactId())
+                            .sorted()
+                            .toList()
             );
-            if (!dependency.exclusions().isEmpty()) {
-                var exclusions = VECTOR.invoke();
-                for (var exclusion : dependency.exclusions()) {
-                    exclusions = CONJ.invoke(exclusions, SYMBOL.invoke(
-                            exclusion.groupId(),
-                            exclusion.artifactId()
-                    ));
-                }
-                map = ASSOC.invoke(map, KEYWORD.invoke("exclusions"), exclusions);
-            }
-            deps = ASSOC.invoke(deps, coord, map);
         }
 
-        var repos = HASH_MAP.invoke();
-        for (var repository : builder.repositories) {
-            repos = ASSOC.invoke(
-                    repos,
-                    repository.name(),
-                    HASH_MAP.invoke(
-                            KEYWORD.invoke("url"),
-                            repository.uri().toString()
-                    )
+        var repositories = new TreeMap<String, String>();
+        for (var repository : basisRepositories) {
+            repositories.put(repository.name(), repository.uri().toString());
+        }
+
+        var canonical = new StringBuilder();
+        canonical.append("resolver ").append(resolver.name()).append('\n');
+        dependencies.forEach((coordinate, rest) ->
+                canonical.append("dependency ").append(coordinate).append(' ').append(rest).append('\n'));
+        repositories.forEach((name, uri) ->
+                canonical.append("repository ").append(name).append(' ').append(uri).append('\n'));
+        paths.forEach(path ->
+                canonical.append("path ").append(path).append('\n'));
+
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256")
+                            .digest(canonical.toString().getBytes(StandardCharsets.UTF_8))
             );
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 should always be available", e);
         }
+    }
 
-        this.deps = deps;
-        this.repos = repos;
-        this.paths = List.copyOf(builder.paths);
+    /**
+     * @return A hex encoded SHA-256 of everything that went into this basis. Two bases with
+     * the same fingerprint will resolve to the same path, so this is suitable as a cache key.
+     */
+    public String fingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * @return The resolver used to find the jars for the dependencies.
+     */
+    public Resolver resolver() {
+        return this.resolver;
     }
 
     /**
@@ -99,9 +141,9 @@ public final class Basis implements Serializable {
      * where it can be used as a CLI argument.
      */
     public String path() {
-        return (String) JOIN_CLASSPATH.invoke(
-                VEC.invoke(this.pathRoots().stream().map(Path::toString).toList())
-        );
+        return this.pathRoots().stream()
+                .map(Path::toString)
+                .collect(Collectors.joining(File.pathSeparator));
     }
 
     /**
@@ -119,40 +161,43 @@ public final class Basis implements Serializable {
     }
 
     /**
-     * @return The r
+     * @return The roots of the path: every path that was added, followed by the jars
+     * of every dependency.
      */
     public List<Path> pathRoots() {
-        var classpathMap = (IFn) MAKE_CLASSPATH_MAP.invoke(
-                HASH_MAP.invoke(
-                        KEYWORD.invoke("paths"),
-                        VEC.invoke(this.paths.stream().map(Path::toString).toList())
-                ),
-                RESOLVE_DEPS.invoke(
-                        HASH_MAP.invoke(
-                                KEYWORD.invoke("deps"), this.deps,
-                                KEYWORD.invoke("mvn/repos"), this.repos
-                        ),
-                        HASH_MAP.invoke()
-                ),
-                null
-        );
-        var roots = (List<?>) classpathMap.invoke(KEYWORD.invoke("classpath-roots"));
-        return roots.stream().map(root -> Path.of((String) root)).toList();
+        var roots = new ArrayList<>(this.paths);
+        roots.addAll(this.resolver.resolve(this.dependencies, this.repositories));
+        return List.copyOf(roots);
+    }
+
+    /**
+     * @return The graph of every dependency in this basis. Paths added to the basis are not
+     * part of it.
+     */
+    public DependencyGraph graph() {
+        return this.resolver.graph(this.dependencies, this.repositories);
+    }
+
+    /**
+     * @return Every file in the local repository needed to resolve this basis, which is
+     * enough to resolve it again from a mirror.
+     */
+    public List<Path> files() {
+        return this.resolver.files(this.dependencies, this.repositories);
+    }
+
+    /**
+     * @return The repositories dependencies are looked for in.
+     */
+    public List<MavenRepository> repositories() {
+        return this.repositories;
     }
 
     /**
      * Prints the tree of dependencies.
      */
     public void printTree() {
-        PRINT_TREE.invoke(
-                RESOLVE_DEPS.invoke(
-                        HASH_MAP.invoke(
-                                KEYWORD.invoke("deps"), this.deps,
-                                KEYWORD.invoke("mvn/repos"), this.repos
-                        ),
-                        HASH_MAP.invoke()
-                )
-        );
+        this.resolver.printTree(this.dependencies, this.repositories);
     }
 
     /**
@@ -170,42 +215,6 @@ public final class Basis implements Serializable {
         return new Builder().addRepository(MavenRepository.MAVEN_CENTRAL);
     }
 
-    static final class Requires {
-        static final IFn KEYWORD;
-        static final IFn SYMBOL;
-
-        static final IFn VEC;
-        static final IFn VECTOR;
-        static final IFn CONJ;
-
-        static final IFn HASH_MAP;
-        static final IFn ASSOC;
-
-        static final IFn RESOLVE_DEPS;
-        static final IFn MAKE_CLASSPATH_MAP;
-        static final IFn JOIN_CLASSPATH;
-        static final IFn PRINT_TREE;
-
-        static {
-            KEYWORD = Clojure.var("clojure.core", "keyword");
-            SYMBOL = Clojure.var("clojure.core", "symbol");
-
-            VEC = Clojure.var("clojure.core", "vec");
-            VECTOR = Clojure.var("clojure.core", "vector");
-            CONJ = Clojure.var("clojure.core", "conj");
-
-            HASH_MAP = Clojure.var("clojure.core", "hash-map");
-            ASSOC = Clojure.var("clojure.core", "assoc");
-
-            var REQUIRE = Clojure.var("clojure.core", "require");
-            REQUIRE.invoke(Clojure.read("[clojure.tools.deps.alpha]"));
-            RESOLVE_DEPS = Clojure.var("clojure.tools.deps.alpha", "resolve-deps");
-            MAKE_CLASSPATH_MAP = Clojure.var("clojure.tools.deps.alpha", "make-classpath-map");
-            JOIN_CLASSPATH = Clojure.var("clojure.tools.deps.alpha", "join-classpath");
-            PRINT_TREE = Clojure.var("clojure.tools.deps.alpha", "print-tree");
-        }
-    }
-
     /**
      * Builder for Basis.
      */
@@ -213,11 +222,13 @@ public final class Basis implements Serializable {
         private final List<MavenDependency> dependencies;
         private final List<MavenRepository> repositories;
         private final List<Path> paths;
+        private Resolver resolver;
 
         private Builder() {
             this.dependencies = new ArrayList<>();
             this.repositories = new ArrayList<>();
             this.paths = new ArrayList<>();
+            this.resolver = Resolver.defaultResolver();
         }
 
         public Builder addDependency(MavenDependency dependency) {
@@ -250,24 +261,27 @@ public final class Basis implements Serializable {
             return this;
         }
 
+        public Builder resolver(Resolver resolver) {
+            this.resolver = Objects.requireNonNull(resolver, "resolver should not be null");
+            return this;
+        }
+
         public Basis build() {
             return new Basis(this);
         }
     }
 
-
+    /**
+     * Two bases are equal when they have the same fingerprint, which is exactly when they
+     * will resolve to the same path.
+     */
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        Basis basis = (Basis) o;
-        return Objects.equals(deps, basis.deps)
-                && Objects.equals(repos, basis.repos)
-                && Objects.equals(paths, basis.paths);
+        return this == o || (o instanceof Basis basis && this.fingerprint.equals(basis.fingerprint));
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(deps, repos, paths);
+        return this.fingerprint.hashCode();
     }
 }
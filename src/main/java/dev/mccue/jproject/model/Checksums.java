@@ -0,0 +1,175 @@
+package dev.mccue.jproject.model;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * The checksums maven repositories keep next to every artifact, like {@code foo-1.0.jar.sha1}.
+ *
+ * <p>Files are memory mapped rather than read onto the heap, so hashing a large jar doesn't
+ * copy it, and every algorithm wanted is computed in the same pass over the file. A single
+ * digest can't be split up, so callers hash many files at once to keep every core busy.
+ */
+public final class Checksums {
+    private Checksums() {}
+
+    /**
+     * How much of a file is mapped at a time.
+     */
+    private static final long CHUNK_SIZE = 64L * 1024 * 1024;
+
+    public enum Algorithm {
+        SHA1("SHA-1", "sha1"),
+        SHA256("SHA-256", "sha256");
+
+        private final String jcaName;
+        private final String extension;
+
+        Algorithm(String jcaName, String extension) {
+            this.jcaName = jcaName;
+            this.extension = extension;
+        }
+
+        /**
+         * @return The extension of the file the checksum is kept in, without the dot.
+         */
+        public String extension() {
+            return this.extension;
+        }
+
+        /**
+         * @return Where the checksum of the given file is kept.
+         */
+        public Path sidecar(Path file) {
+            return file.resolveSibling(file.getFileName() + "." + this.extension);
+        }
+
+        private MessageDigest digest() {
+            try {
+                return MessageDigest.getInstance(this.jcaName);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(this.jcaName + " should always be available", e);
+            }
+        }
+    }
+
+    /**
+     * Thrown when a file doesn't match the checksum recorded for it.
+     */
+    public static final class ChecksumException extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private ChecksumException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * @return The hex encoded checksum of the file for each of the given algorithms.
+     */
+    public static Map<Algorithm, String> hash(Path file, Set<Algorithm> algorithms) {
+        var digests = new EnumMap<Algorithm, MessageDigest>(Algorithm.class);
+        algorithms.forEach(algorithm -> digests.put(algorithm, algorithm.digest()));
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+            for (long position = 0; position < size; position += CHUNK_SIZE) {
+                var buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position));
+                for (var digest : digests.values()) {
+                    digest.update(buffer.duplicate());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        var checksums = new EnumMap<Algorithm, String>(Algorithm.class);
+        digests.forEach((algorithm, digest) -> checksums.put(algorithm, HexFormat.of().formatHex(digest.digest())));
+        return checksums;
+    }
+
+    /**
+     * @return The hex encoded checksum of the file.
+     */
+    public static String hash(Path file, Algorithm algorithm) {
+        return hash(file, EnumSet.of(algorithm)).get(algorithm);
+    }
+
+    /**
+     * Reads a checksum file. Some repositories put the file name after the checksum, so
+     * only the first word counts.
+     */
+    public static String read(Path sidecar) {
+        try {
+            var contents = Files.readString(sidecar, StandardCharsets.US_ASCII).trim();
+            var end = contents.indexOf(' ');
+            return (end == -1 ? contents : contents.substring(0, end)).toLowerCase(Locale.ROOT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the checksum of the file next to it for each of the given algorithms.
+     */
+    public static void write(Path file, Map<Algorithm, String> checksums) {
+        try {
+            for (var entry : checksums.entrySet()) {
+                Files.writeString(entry.getKey().sidecar(file), entry.getValue(), StandardCharsets.US_ASCII);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks the file against whichever checksum files sit next to it.
+     *
+     * @return Whether there was a checksum to check against.
+     * @throws ChecksumException If the file doesn't match.
+     */
+    public static boolean verify(Path file) {
+        return verify(file, file);
+    }
+
+    /**
+     * Checks the file against whichever checksum files sit next to where it is meant to be,
+     * which is useful before moving a download into place.
+     *
+     * @return Whether there was a checksum to check against.
+     * @throws ChecksumException If the file doesn't match.
+     */
+    public static boolean verify(Path file, Path location) {
+        var expected = new EnumMap<Algorithm, String>(Algorithm.class);
+        for (var algorithm : Algorithm.values()) {
+            var sidecar = algorithm.sidecar(location);
+            if (Files.isRegularFile(sidecar)) {
+                expected.put(algorithm, read(sidecar));
+            }
+        }
+        if (expected.isEmpty()) {
+            return false;
+        }
+
+        var actual = hash(file, expected.keySet());
+        for (var entry : expected.entrySet()) {
+            if (!entry.getValue().equals(actual.get(entry.getKey()))) {
+                throw new ChecksumException(
+                        location + " should have a " + entry.getKey().extension() + " of " + entry.getValue()
+                                + " but has " + actual.get(entry.getKey())
+                );
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,109 @@
+package dev.mccue.jproject.model;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Every dependency picked by a single resolution, along with what each one depends on.
+ *
+ * <p>Resolving once for a union of dependencies and then asking the graph for the paths of
+ * a subset of them means shared transitive dependencies are only resolved and downloaded
+ * once, and end up at the same version in every subset.
+ */
+public final class DependencyGraph {
+    /**
+     * A single resolved dependency.
+     *
+     * @param coordinate The group and artifact of the dependency.
+     * @param version The version that was picked.
+     * @param paths The jars for the dependency. Usually just one.
+     * @param dependencies Everything this dependency directly depends on.
+     */
+    public record Node(
+            MavenDependency.Coordinate coordinate,
+            String version,
+            List<Path> paths,
+            List<MavenDependency.Coordinate> dependencies
+    ) {
+        public Node {
+            Objects.requireNonNull(coordinate, "coordinate should not be null");
+            Objects.requireNonNull(version, "version should not be null");
+            paths = List.copyOf(paths);
+            dependencies = List.copyOf(dependencies);
+        }
+    }
+
+    private final Map<MavenDependency.Coordinate, Node> nodes;
+
+    public DependencyGraph(List<Node> nodes) {
+        var byCoordinate = new LinkedHashMap<MavenDependency.Coordinate, Node>();
+        nodes.forEach(node -> byCoordinate.put(node.coordinate(), node));
+        this.nodes = Collections.unmodifiableMap(byCoordinate);
+    }
+
+    /**
+     * @return Every node in the graph.
+     */
+    public Collection<Node> nodes() {
+        return this.nodes.values();
+    }
+
+    /**
+     * @return The node for the given coordinate, if it was resolved.
+     */
+    public Optional<Node> node(MavenDependency.Coordinate coordinate) {
+        return Optional.ofNullable(this.nodes.get(coordinate));
+    }
+
+    /**
+     * Projects out the jars needed for the given roots. Each root must have been part of
+     * the resolution which produced this graph, and its exclusions are honored for anything
+     * which is only reachable through it.
+     *
+     * @return The jars for the roots and everything they depend on, nearest first.
+     */
+    public List<Path> paths(List<MavenDependency> roots) {
+        record Visit(MavenDependency.Coordinate coordinate, List<MavenDependency.Coordinate> exclusions) {}
+
+        var visited = new HashSet<MavenDependency.Coordinate>();
+        var queue = new ArrayDeque<Visit>();
+        for (var root : roots) {
+            queue.add(new Visit(root.coordinate(), root.exclusions()));
+        }
+
+        var paths = new ArrayList<Path>();
+        while (!queue.isEmpty()) {
+            var visit = queue.poll();
+            if (!visited.add(visit.coordinate())) {
+                continue;
+            }
+            var node = this.nodes.get(visit.coordinate());
+            if (node == null) {
+                throw new IllegalArgumentException(
+                        visit.coordinate().groupId() + "/" + visit.coordinate().artifactId()
+                                + " is not part of this dependency graph"
+                );
+            }
+            paths.addAll(node.paths());
+            for (var dependency : node.dependencies()) {
+                if (!excluded(dependency, visit.exclusions()) && this.nodes.containsKey(dependency)) {
+                    queue.add(new Visit(dependency, visit.exclusions()));
+                }
+            }
+        }
+        return List.copyOf(paths);
+    }
+
+    private static boolean excluded(
+            MavenDependency.Coordinate coordinate,
+            List<MavenDependency.Coordinate> exclusions
+    ) {
+        for (var exclusion : exclusions) {
+            if (("*".equals(exclusion.groupId()) || exclusion.groupId().equals(coordinate.groupId()))
+                    && ("*".equals(exclusion.artifactId()) || exclusion.artifactId().equals(coordinate.artifactId()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
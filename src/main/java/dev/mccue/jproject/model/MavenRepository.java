@@ -17,6 +17,14 @@ public record MavenRepository(String name, URI uri) implements Serializable {
         Objects.requireNonNull(uri, "uri should not be null");
     }
 
+    /**
+     * @return Whether this repository is a directory on this machine, like a mirror made by
+     * "jproject mirror", rather than something reached over the network.
+     */
+    public boolean isLocal() {
+        return "file".equals(this.uri.getScheme());
+    }
+
     /**
      * The primary repository of Java artifacts.
      */
@@ -39,5 +47,4 @@ public record MavenRepository(String name, URI uri) implements Serializable {
     public static final MavenRepository CLOJARS = new MavenRepository(
             "clojars", URI.create("https://repo.clojars.org/")
     );
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,706 @@
+package dev.mccue.jproject.model;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves dependencies by reading POMs straight from maven repositories.
+ *
+ * <p>Conflicts are settled the same way maven settles them: the version closest to the
+ * root of the tree wins, and between two at the same depth the first one declared wins.
+ * POMs are fetched for a whole level of the tree at once, and are parsed once per
+ * process no matter how many times they show up. Anything downloaded ends up in the
+ * same local repository maven and tools.deps use, after being checked against the
+ * checksums the repository keeps next to it.
+ *
+ * <p>file:// repositories are looked in before any others, and when {@link Resolver#offline()}
+ * they are the only ones looked in, so a missing artifact fails straight away instead of
+ * waiting on a network that isn't there.
+ */
+final class MavenResolver implements Resolver {
+    static final String NAME = "maven";
+    private static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)}");
+
+    /**
+     * Shared by every resolver, so one made for a single resolution costs nothing to throw away.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "jproject-resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .executor(EXECUTOR)
+            .build();
+
+    static final MavenResolver INSTANCE = new MavenResolver(Path.of(
+            System.getProperty("user.home"), ".m2", "repository"
+    ));
+
+    private final Path localRepository;
+    private final Map<Gav, CompletableFuture<Model>> models;
+
+    /**
+     * @param localRepository Where downloads go, and where files are looked for first. Anything
+     *                        other than {@link #INSTANCE} is only for tests and benchmarks.
+     */
+    MavenResolver(Path localRepository) {
+        this.localRepository = localRepository;
+        this.models = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    /**
+     * Thrown when a dependency can't be resolved.
+     */
+    static final class ResolutionException extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        ResolutionException(String message) {
+            super(message);
+        }
+
+        ResolutionException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private record Gav(String groupId, String artifactId, String version) {
+        Path path(String classifier, String extension) {
+            var fileName = this.artifactId + "-" + this.version
+                    + (classifier == null || classifier.isEmpty() ? "" : "-" + classifier)
+                    + "." + extension;
+            return Path.of(this.groupId.replace('.', '/'), this.artifactId, this.version, fileName);
+        }
+
+        @Override
+        public String toString() {
+            return this.groupId + "/" + this.artifactId + " " + this.version;
+        }
+    }
+
+    private record Dependency(
+            String groupId,
+            String artifactId,
+            String version,
+            String type,
+            String classifier,
+            String scope,
+            boolean optional,
+            List<MavenDependency.Coordinate> exclusions
+    ) {
+        String managementKey() {
+            return this.groupId + ":" + this.artifactId + ":" + this.type + ":" + this.classifier;
+        }
+
+        Dependency interpolate(Map<String, String> properties) {
+            return new Dependency(
+                    MavenResolver.interpolate(this.groupId, properties),
+                    MavenResolver.interpolate(this.artifactId, properties),
+                    MavenResolver.interpolate(this.version, properties),
+                    MavenResolver.interpolate(this.type, properties),
+                    MavenResolver.interpolate(this.classifier, properties),
+                    MavenResolver.interpolate(this.scope, properties),
+                    this.optional,
+                    this.exclusions.stream()
+                            .map(exclusion -> new MavenDependency.Coordinate(
+                                    MavenResolver.interpolate(exclusion.groupId(), properties),
+                                    MavenResolver.interpolate(exclusion.artifactId(), properties)
+                            ))
+                            .toList()
+            );
+        }
+
+        Dependency managedBy(Dependency managed) {
+            var exclusions = new ArrayList<>(this.exclusions);
+            exclusions.addAll(managed.exclusions());
+            return new Dependency(
+                    this.groupId,
+                    this.artifactId,
+                    this.version == null ? managed.version() : this.version,
+                    this.type,
+                    this.classifier,
+                    this.scope == null ? managed.scope() : this.scope,
+                    this.optional,
+                    exclusions
+            );
+        }
+    }
+
+    /**
+     * A POM with its parents and imports already applied.
+     */
+    private record Model(
+            Gav gav,
+            List<Path> poms,
+            String packaging,
+            Map<String, String> properties,
+            Map<String, Dependency> dependencyManagement,
+            List<Dependency> dependencies
+    ) {}
+
+    /**
+     * A single POM exactly as written.
+     */
+    private record RawPom(
+            Gav parent,
+            String groupId,
+            String artifactId,
+            String version,
+            String packaging,
+            Map<String, String> properties,
+            List<Dependency> dependencyManagement,
+            List<Dependency> dependencies
+    ) {}
+
+    /**
+     * A dependency which made it into the resolved tree.
+     */
+    private record Selected(
+            Gav gav,
+            String type,
+            String classifier,
+            Set<MavenDependency.Coordinate> exclusions,
+            List<Selected> children,
+            Set<MavenDependency.Coordinate> dependencies
+    ) {
+        boolean excludes(String groupId, String artifactId) {
+            for (var exclusion : this.exclusions) {
+                if (("*".equals(exclusion.groupId()) || exclusion.groupId().equals(groupId))
+                        && ("*".equals(exclusion.artifactId()) || exclusion.artifactId().equals(artifactId))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public DependencyGraph graph(List<MavenDependency> dependencies, List<MavenRepository> repositories) {
+        return graphOf(select(dependencies, repositories), repositories);
+    }
+
+    /**
+     * Includes the POM of every dependency, along with the POMs of their parents and of any
+     * dependency management they import.
+     */
+    @Override
+    public List<Path> files(List<MavenDependency> dependencies, List<MavenRepository> repositories) {
+        var selected = select(dependencies, repositories);
+        var files = new LinkedHashSet<Path>();
+        for (var node : selected) {
+            files.addAll(join(model(node.gav(), repositories)).poms());
+        }
+        for (var node : graphOf(selected, repositories).nodes()) {
+            files.addAll(node.paths());
+        }
+        return List.copyOf(files);
+    }
+
+    private DependencyGraph graphOf(List<Selected> selected, List<MavenRepository> repositories) {
+        var jars = new ArrayList<CompletableFuture<List<Path>>>();
+        for (var node : selected) {
+            jars.add("pom".equals(node.type())
+                    ? CompletableFuture.completedFuture(List.of())
+                    : CompletableFuture.supplyAsync(
+                            () -> List.of(fetch(node.gav(), node.classifier(), "jar", repositories)),
+                            EXECUTOR
+                    ));
+        }
+
+        var nodes = new ArrayList<DependencyGraph.Node>();
+        for (int i = 0; i < selected.size(); i++) {
+            var node = selected.get(i);
+            nodes.add(new DependencyGraph.Node(
+                    new MavenDependency.Coordinate(node.gav().groupId(), node.gav().artifactId()),
+                    node.gav().version(),
+                    join(jars.get(i)),
+                    List.copyOf(node.dependencies())
+            ));
+        }
+        return new DependencyGraph(nodes);
+    }
+
+    @Override
+    public void printTree(List<MavenDependency> dependencies, List<MavenRepository> repositories) {
+        var selected = select(dependencies, repositories);
+        var roots = selected.subList(0, Math.min(selected.size(), rootCount(dependencies)));
+        for (var root : roots) {
+            printTree(root, 0);
+        }
+    }
+
+    private static int rootCount(List<MavenDependency> dependencies) {
+        return (int) dependencies.stream().map(MavenDependency::coordinate).distinct().count();
+    }
+
+    private static void printTree(Selected node, int depth) {
+        System.out.println("  ".repeat(depth) + node.gav());
+        for (var child : node.children()) {
+            printTree(child, depth + 1);
+        }
+    }
+
+    /**
+     * Walks the dependency tree breadth first so that the nearest version of any
+     * dependency is the one which gets picked.
+     *
+     * @return Every selected dependency, in the order they were picked.
+     */
+    private List<Selected> select(List<MavenDependency> dependencies, List<MavenRepository> repositories) {
+        var chosen = new LinkedHashMap<MavenDependency.Coordinate, Selected>();
+
+        // Later declarations of the same root replace earlier ones, same as in a map.
+        var roots = new LinkedHashMap<MavenDependency.Coordinate, MavenDependency>();
+        dependencies.forEach(dependency -> roots.put(dependency.coordinate(), dependency));
+
+        var level = new ArrayList<Selected>();
+        for (var root : roots.values()) {
+            var node = new Selected(
+                    new Gav(root.coordinate().groupId(), root.coordinate().artifactId(), selectVersion(root.version())),
+                    "jar",
+                    null,
+                    Set.copyOf(root.exclusions()),
+                    new ArrayList<>(),
+                    new LinkedHashSet<>()
+            );
+            chosen.put(root.coordinate(), node);
+            level.add(node);
+        }
+
+        while (!level.isEmpty()) {
+            var levelModels = level.stream()
+                    .map(node -> model(node.gav(), repositories))
+                    .toList();
+
+            var nextLevel = new ArrayList<Selected>();
+            for (int i = 0; i < level.size(); i++) {
+                var parent = level.get(i);
+                var model = join(levelModels.get(i));
+                for (var dependency : model.dependencies()) {
+                    if (dependency.optional()
+                            || !(dependency.scope() == null
+                                || "compile".equals(dependency.scope())
+                                || "runtime".equals(dependency.scope()))
+                            || parent.excludes(dependency.groupId(), dependency.artifactId())) {
+                        continue;
+                    }
+
+                    var coordinate = new MavenDependency.Coordinate(dependency.groupId(), dependency.artifactId());
+                    parent.dependencies().add(coordinate);
+                    if (chosen.containsKey(coordinate)) {
+                        continue;
+                    }
+                    if (dependency.version() == null) {
+                        throw new ResolutionException(
+                                "No version for " + coordinate.groupId() + "/" + coordinate.artifactId()
+                                        + " in " + model.gav()
+                        );
+                    }
+
+                    var exclusions = new HashSet<>(parent.exclusions());
+                    exclusions.addAll(dependency.exclusions());
+                    var node = new Selected(
+                            new Gav(dependency.groupId(), dependency.artifactId(), selectVersion(dependency.version())),
+                            dependency.type() == null ? "jar" : dependency.type(),
+                            dependency.classifier(),
+                            exclusions,
+                            new ArrayList<>(),
+                            new LinkedHashSet<>()
+                    );
+                    chosen.put(coordinate, node);
+                    parent.children().add(node);
+                    nextLevel.add(node);
+                }
+            }
+            level = nextLevel;
+        }
+
+        return new ArrayList<>(chosen.values());
+    }
+
+    /**
+     * Picks a concrete version out of what is written in a POM. Ranges are settled by
+     * their lower bound when it is inclusive, and their upper bound otherwise.
+     */
+    private static String selectVersion(String version) {
+        var trimmed = version.trim();
+        if (!(trimmed.startsWith("[") || trimmed.startsWith("("))) {
+            return trimmed;
+        }
+        var firstRange = trimmed.split("(?<=[])]),")[0];
+        var bounds = firstRange.substring(1, firstRange.length() - 1).split(",", -1);
+        if (firstRange.startsWith("[") && !bounds[0].isBlank()) {
+            return bounds[0].trim();
+        }
+        if (firstRange.endsWith("]") && bounds.length > 1 && !bounds[1].isBlank()) {
+            return bounds[1].trim();
+        }
+        throw new ResolutionException("Can't pick a version out of the range " + version);
+    }
+
+    private CompletableFuture<Model> model(Gav gav, List<MavenRepository> repositories) {
+        var model = this.models.computeIfAbsent(gav, __ -> CompletableFuture.supplyAsync(
+                () -> buildModel(gav, repositories),
+                EXECUTOR
+        ));
+        // A failure might be the network, so it is only remembered for the resolution that saw it.
+        model.whenComplete((__, e) -> {
+            if (e != null) {
+                this.models.remove(gav, model);
+            }
+        });
+        return model;
+    }
+
+    private Model buildModel(Gav gav, List<MavenRepository> repositories) {
+        var pom = fetch(gav, null, "pom", repositories);
+        var raw = parsePom(pom);
+
+        var parent = raw.parent() == null ? null : join(model(raw.parent(), repositories));
+
+        var poms = new LinkedHashSet<Path>();
+        poms.add(pom);
+        if (parent != null) {
+            poms.addAll(parent.poms());
+        }
+
+        var properties = new HashMap<String, String>();
+        if (parent != null) {
+            properties.putAll(parent.properties());
+            properties.put("project.parent.groupId", parent.gav().groupId());
+            properties.put("project.parent.version", parent.gav().version());
+        }
+        properties.putAll(raw.properties());
+        properties.put("project.groupId", gav.groupId());
+        properties.put("project.artifactId", gav.artifactId());
+        properties.put("project.version", gav.version());
+        properties.put("pom.groupId", gav.groupId());
+        properties.put("pom.version", gav.version());
+        properties.put("groupId", gav.groupId());
+        properties.put("version", gav.version());
+
+        var dependencyManagement = new LinkedHashMap<String, Dependency>();
+        for (var managed : raw.dependencyManagement()) {
+            var dependency = managed.interpolate(properties);
+            if ("import".equals(dependency.scope()) && "pom".equals(dependency.type())) {
+                var imported = join(model(
+                        new Gav(dependency.groupId(), dependency.artifactId(), selectVersion(dependency.version())),
+                        repositories
+                ));
+                imported.dependencyManagement().forEach(dependencyManagement::putIfAbsent);
+                poms.addAll(imported.poms());
+            }
+            else {
+                dependencyManagement.putIfAbsent(dependency.managementKey(), dependency);
+            }
+        }
+        if (parent != null) {
+            parent.dependencyManagement().forEach(dependencyManagement::putIfAbsent);
+        }
+
+        var dependencies = new LinkedHashMap<String, Dependency>();
+        if (parent != null) {
+            parent.dependencies().forEach(dependency -> dependencies.put(dependency.managementKey(), dependency));
+        }
+        for (var declared : raw.dependencies()) {
+            var dependency = declared.interpolate(properties);
+            var managed = dependencyManagement.get(dependency.managementKey());
+            if (managed != null) {
+                dependency = dependency.managedBy(managed);
+            }
+            dependencies.put(dependency.managementKey(), dependency);
+        }
+
+        return new Model(
+                gav,
+                List.copyOf(poms),
+                raw.packaging() == null ? "jar" : raw.packaging(),
+                Map.copyOf(properties),
+                Collections.unmodifiableMap(dependencyManagement),
+                List.copyOf(dependencies.values())
+        );
+    }
+
+    private static String interpolate(String value, Map<String, String> properties) {
+        if (value == null) {
+            return null;
+        }
+        var result = value;
+        // Properties can refer to other properties, but not forever.
+        for (int i = 0; i < 10 && result.contains("${"); i++) {
+            var matcher = PROPERTY.matcher(result);
+            var interpolated = new StringBuilder();
+            while (matcher.find()) {
+                var replacement = properties.get(matcher.group(1));
+                matcher.appendReplacement(
+                        interpolated,
+                        java.util.regex.Matcher.quoteReplacement(replacement == null ? matcher.group() : replacement)
+                );
+            }
+            matcher.appendTail(interpolated);
+            if (interpolated.toString().equals(result)) {
+                break;
+            }
+            result = interpolated.toString();
+        }
+        return result;
+    }
+
+    private static RawPom parsePom(Path pom) {
+        final Element project;
+        try {
+            var factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(false);
+            factory.setExpandEntityReferences(false);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            project = factory.newDocumentBuilder().parse(pom.toFile()).getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new ResolutionException("Could not parse " + pom, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Gav parent = null;
+        var parentElement = child(project, "parent");
+        if (parentElement != null) {
+            parent = new Gav(
+                    text(parentElement, "groupId"),
+                    text(parentElement, "artifactId"),
+                    text(parentElement, "version")
+            );
+        }
+
+        var properties = new HashMap<String, String>();
+        var propertiesElement = child(project, "properties");
+        if (propertiesElement != null) {
+            for (var property : children(propertiesElement)) {
+                properties.put(property.getTagName(), property.getTextContent().trim());
+            }
+        }
+
+        var dependencyManagement = new ArrayList<Dependency>();
+        var dependencyManagementElement = child(project, "dependencyManagement");
+        if (dependencyManagementElement != null) {
+            dependencyManagement.addAll(dependencies(child(dependencyManagementElement, "dependencies")));
+        }
+
+        return new RawPom(
+                parent,
+                text(project, "groupId"),
+                text(project, "artifactId"),
+                text(project, "version"),
+                text(project, "packaging"),
+                properties,
+                dependencyManagement,
+                dependencies(child(project, "dependencies"))
+        );
+    }
+
+    private static List<Dependency> dependencies(Element dependenciesElement) {
+        if (dependenciesElement == null) {
+            return List.of();
+        }
+        var dependencies = new ArrayList<Dependency>();
+        for (var dependency : children(dependenciesElement)) {
+            if (!"dependency".equals(dependency.getTagName())) {
+                continue;
+            }
+            var exclusions = new ArrayList<MavenDependency.Coordinate>();
+            var exclusionsElement = child(dependency, "exclusions");
+            if (exclusionsElement != null) {
+                for (var exclusion : children(exclusionsElement)) {
+                    var groupId = text(exclusion, "groupId");
+                    var artifactId = text(exclusion, "artifactId");
+                    exclusions.add(new MavenDependency.Coordinate(
+                            groupId == null ? "*" : groupId,
+                            artifactId == null ? "*" : artifactId
+                    ));
+                }
+            }
+            var type = text(dependency, "type");
+            dependencies.add(new Dependency(
+                    text(dependency, "groupId"),
+                    text(dependency, "artifactId"),
+                    text(dependency, "version"),
+                    type == null ? "jar" : type,
+                    text(dependency, "classifier"),
+                    text(dependency, "scope"),
+                    "true".equals(text(dependency, "optional")),
+                    exclusions
+            ));
+        }
+        return dependencies;
+    }
+
+    private static List<Element> children(Element element) {
+        var children = new ArrayList<Element>();
+        var nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) nodes.item(i));
+            }
+        }
+        return children;
+    }
+
+    private static Element child(Element element, String tagName) {
+        for (var child : children(element)) {
+            if (tagName.equals(child.getTagName())) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static String text(Element element, String tagName) {
+        var child = child(element, tagName);
+        return child == null ? null : child.getTextContent().trim();
+    }
+
+    /**
+     * Makes sure the given file is in the local repository, downloading it from the first
+     * repository that has it if it isn't.
+     *
+     * @return Where the file is in the local repository.
+     */
+    private Path fetch(Gav gav, String classifier, String extension, List<MavenRepository> repositories) {
+        var relative = gav.path(classifier, extension);
+        var local = this.localRepository.resolve(relative);
+        if (Files.exists(local)) {
+            return local;
+        }
+
+        var offline = Resolver.offline();
+        var candidates = repositories.stream()
+                .filter(repository -> !offline || repository.isLocal())
+                .sorted(Comparator.comparing(repository -> !repository.isLocal()))
+                .toList();
+        var uriPath = relative.toString().replace(local.getFileSystem().getSeparator(), "/");
+        // One repository being unreachable or serving a corrupt file shouldn't stop the others being tried.
+        var failures = new ArrayList<Exception>();
+        for (var repository : candidates) {
+            try {
+                if (fetchFrom(repository, uriPath, local)) {
+                    return local;
+                }
+            } catch (IOException | UncheckedIOException | ResolutionException e) {
+                failures.add(e);
+            }
+        }
+
+        var exception = offline
+                ? new ResolutionException("Could not find " + gav + " (" + uriPath + ") in the local repository or "
+                        + "any file:// repository, and nothing else can be looked in while offline")
+                : new ResolutionException("Could not find " + gav + " (" + uriPath + ") in " + repositories.stream()
+                        .map(MavenRepository::name)
+                        .toList());
+        failures.forEach(exception::addSuppressed);
+        throw exception;
+    }
+
+    /**
+     * Downloads a file into the local repository, along with its checksums, and checks that
+     * the two match before the file is moved into place.
+     *
+     * @return Whether the repository had the file.
+     */
+    private boolean fetchFrom(MavenRepository repository, String uriPath, Path local) throws IOException {
+        var base = repository.uri().toString();
+        var uri = URI.create(base.endsWith("/") ? base : base + "/").resolve(uriPath);
+        Files.createDirectories(local.getParent());
+        var temp = Files.createTempFile(local.getParent(), local.getFileName().toString(), ".part");
+        try {
+            if (!download(uri, temp)) {
+                return false;
+            }
+
+            // Every repository has SHA-1 checksums. Asking remote ones for anything more would
+            // mostly be requests for files that aren't there.
+            var algorithms = repository.isLocal()
+                    ? List.of(Checksums.Algorithm.values())
+                    : List.of(Checksums.Algorithm.SHA1);
+            for (var algorithm : algorithms) {
+                var sidecar = algorithm.sidecar(local);
+                var sidecarTemp = Files.createTempFile(local.getParent(), sidecar.getFileName().toString(), ".part");
+                try {
+                    if (download(URI.create(uri + "." + algorithm.extension()), sidecarTemp)) {
+                        Files.move(sidecarTemp, sidecar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    else {
+                        Files.deleteIfExists(sidecar);
+                    }
+                } finally {
+                    Files.deleteIfExists(sidecarTemp);
+                }
+            }
+
+            try {
+                Checksums.verify(temp, local);
+            } catch (Checksums.ChecksumException e) {
+                throw new ResolutionException("Downloaded a corrupt file from " + repository.name(), e);
+            }
+            Files.move(temp, local, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return Whether the file was there to download.
+     */
+    private boolean download(URI uri, Path destination) throws IOException {
+        if ("file".equals(uri.getScheme())) {
+            var source = Path.of(uri);
+            if (!Files.exists(source)) {
+                return false;
+            }
+            Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        }
+
+        try {
+            var response = HTTP.send(
+                    HttpRequest.newBuilder(uri).GET().build(),
+                    HttpResponse.BodyHandlers.ofFile(destination)
+            );
+            return response.statusCode() == 200;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResolutionException("Interrupted while downloading " + uri, e);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package dev.mccue.jproject.model;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Something which can take a list of maven dependencies and find the jars for
+ * them and everything they depend on.
+ */
+public interface Resolver {
+    /**
+     * @return A name which identifies this resolver. Two resolvers with the same name
+     * should resolve the same dependencies to the same paths.
+     */
+    String name();
+
+    /**
+     * @return The jars for the given dependencies and all of their transitive dependencies.
+     */
+    default List<Path> resolve(List<MavenDependency> dependencies, List<MavenRepository> repositories) {
+        return graph(dependencies, repositories).paths(dependencies);
+    }
+
+    /**
+     * @return The graph of the given dependencies and all of their transitive dependencies.
+     */
+    DependencyGraph graph(List<MavenDependency> dependencies, List<MavenRepository> repositories);
+
+    /**
+     * @return Every file in the local repository which resolving the given dependencies needs.
+     * By default that is only the jars, but resolvers which know better should include POMs too,
+     * so that the files are enough to resolve the same dependencies again without a network.
+     */
+    default List<Path> files(List<MavenDependency> dependencies, List<MavenRepository> repositories) {
+        return graph(dependencies, repositories).nodes().stream()
+                .flatMap(node -> node.paths().stream())
+                .distinct()
+                .toList();
+    }
+
+    /**
+     * Prints the tree of the given dependencies and their transitive dependencies.
+     */
+    void printTree(List<MavenDependency> dependencies, List<MavenRepository> repositories);
+
+    /**
+     * @return The resolver which goes through clojure's tools.deps.
+     */
+    static Resolver toolsDeps() {
+        return ToolsDepsResolver.INSTANCE;
+    }
+
+    /**
+     * @return The resolver which talks to maven repositories directly, without going
+     * through Clojure.
+     */
+    static Resolver maven() {
+        return MavenResolver.INSTANCE;
+    }
+
+    /**
+     * @return A resolver like {@link #maven()} which uses the given directory as its local
+     * repository, and which starts out having parsed no POMs.
+     */
+    static Resolver maven(Path localRepository) {
+        return new MavenResolver(localRepository);
+    }
+
+    /**
+     * @return The resolver with the given name.
+     */
+    static Resolver named(String name) {
+        return switch (name) {
+            case ToolsDepsResolver.NAME -> toolsDeps();
+            case MavenResolver.NAME -> maven();
+            default -> throw new IllegalArgumentException("Unknown resolver: " + name);
+        };
+    }
+
+    /**
+     * @return The resolver picked by the {@code jproject.resolver} system property or the
+     * {@code JPROJECT_RESOLVER} environment variable, falling back to tools.deps.
+     */
+    static Resolver defaultResolver() {
+        var name = System.getProperty("jproject.resolver", System.getenv("JPROJECT_RESOLVER"));
+        return name == null ? toolsDeps() : named(name);
+    }
+
+    /**
+     * @return Whether resolvers have to stay off the network, as set by the {@code jproject.offline}
+     * system property or the {@code JPROJECT_OFFLINE} environment variable. When offline, only the
+     * local repository and file:// repositories are looked in.
+     */
+    static boolean offline() {
+        return Boolean.parseBoolean(System.getProperty("jproject.offline", System.getenv("JPROJECT_OFFLINE")));
+    }
+}
@@ -0,0 +1,230 @@
+package dev.mccue.jproject.model;
+
+import clojure.java.api.Clojure;
+import clojure.lang.IFn;
+import clojure.lang.Symbol;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static dev.mccue.jproject.model.ToolsDepsResolver.Requires.*;
+
+/**
+ * Resolves dependencies with clojure's tools.deps.alpha.
+ *
+ * <p>Nothing Clojure related is loaded until the first time this actually resolves
+ * something. Dependencies are only turned into Clojure data when they are resolved, and the
+ * most recently used resolutions are remembered, so asking for the path and then the graph of
+ * the same dependencies only resolves them once. A resolution whose files have since gone
+ * missing is forgotten and done again.
+ */
+final class ToolsDepsResolver implements Resolver {
+    static final String NAME = "tools.deps";
+    static final ToolsDepsResolver INSTANCE = new ToolsDepsResolver();
+
+    private static final int MAX_REMEMBERED = 16;
+
+    private record Request(
+            List<MavenDependency> dependencies,
+            List<MavenRepository> repositories,
+            boolean offline
+    ) {}
+
+    /**
+     * Guarded by itself. In access order, so the least recently used is the one dropped.
+     */
+    private final Map<Request, Object> resolved;
+
+    private ToolsDepsResolver() {
+        this.resolved = new LinkedHashMap<>(MAX_REMEMBERED, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Request, Object> eldest) {
+                return size() > MAX_REMEMBERED;
+            }
+        };
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    private static Object deps(List<MavenDependency> dependencies) {
+        var deps = HASH_MAP.invoke();
+        for (var dependency : dependencies) {
+            var coord = SYMBOL.invoke(
+                    dependency.coordinate().groupId(),
+                    dependency.coordinate().artifactId()
+            );
+            var map = HASH_MAP.invoke(
+                    KEYWORD.invoke("mvn/version"),
+                    dependency.version()
+            );
+            if (!dependency.exclusions().isEmpty()) {
+                var exclusions = VECTOR.invoke();
+                for (var exclusion : dependency.exclusions()) {
+                    exclusions = CONJ.invoke(exclusions, SYMBOL.invoke(
+                            exclusion.groupId(),
+                            exclusion.artifactId()
+                    ));
+                }
+                map = ASSOC.invoke(map, KEYWORD.invoke("exclusions"), exclusions);
+            }
+            deps = ASSOC.invoke(deps, coord, map);
+        }
+        return deps;
+    }
+
+    /**
+     * tools.deps has no offline switch of its own, so when offline it is only told about the
+     * repositories which don't need a network.
+     */
+    private static Object repos(List<MavenRepository> repositories) {
+        var offline = Resolver.offline();
+        var repos = HASH_MAP.invoke();
+        for (var repository : repositories) {
+            if (offline && !repository.isLocal()) {
+                continue;
+            }
+            repos = ASSOC.invoke(
+                    repos,
+                    repository.name(),
+                    HASH_MAP.invoke(
+                            KEYWORD.invoke("url"),
+                            repository.uri().toString()
+                    )
+            );
+        }
+        return repos;
+    }
+
+    private Object resolveDeps(List<MavenDependency> dependencies, List<MavenRepository> repositories) {
+        var request = new Request(List.copyOf(dependencies), List.copyOf(repositories), Resolver.offline());
+        Object libs;
+        synchronized (this.resolved) {
+            libs = this.resolved.get(request);
+        }
+        if (libs != null && !allPathsExist(libs)) {
+            synchronized (this.resolved) {
+                this.resolved.remove(request);
+            }
+            libs = null;
+        }
+        if (libs == null) {
+            libs = RESOLVE_DEPS.invoke(
+                    HASH_MAP.invoke(
+                            KEYWORD.invoke("deps"), deps(dependencies),
+                            KEYWORD.invoke("mvn/repos"), repos(repositories)
+                    ),
+                    HASH_MAP.invoke()
+            );
+            synchronized (this.resolved) {
+                this.resolved.put(request, libs);
+            }
+        }
+        return libs;
+    }
+
+    /**
+     * @return Whether every file tools.deps resolved the libs to is still there, which a long
+     * running process can't take for granted.
+     */
+    private static boolean allPathsExist(Object libs) {
+        for (var coord : ((Map<?, ?>) libs).values()) {
+            var paths = (List<?>) ((Map<?, ?>) coord).get(KEYWORD.invoke("paths"));
+            if (paths != null && !paths.stream().allMatch(path -> Files.exists(Path.of((String) path)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<Path> resolve(List<MavenDependency> dependencies, List<MavenRepository> repositories) {
+        var classpathMap = (IFn) MAKE_CLASSPATH_MAP.invoke(
+                HASH_MAP.invoke(
+                        KEYWORD.invoke("paths"),
+                        VECTOR.invoke()
+                ),
+                resolveDeps(dependencies, repositories),
+                null
+        );
+        var roots = (List<?>) classpathMap.invoke(KEYWORD.invoke("classpath-roots"));
+        return roots.stream().map(root -> Path.of((String) root)).toList();
+    }
+
+    @Override
+    public DependencyGraph graph(List<MavenDependency> dependencies, List<MavenRepository> repositories) {
+        var libs = (Map<?, ?>) resolveDeps(dependencies, repositories);
+
+        // tools.deps records who depends on each lib, so flip that around.
+        var children = new HashMap<MavenDependency.Coordinate, List<MavenDependency.Coordinate>>();
+        for (var lib : libs.entrySet()) {
+            var dependents = (List<?>) ((Map<?, ?>) lib.getValue()).get(KEYWORD.invoke("dependents"));
+            if (dependents != null) {
+                for (var dependent : dependents) {
+                    children.computeIfAbsent(coordinate((Symbol) dependent), __ -> new ArrayList<>())
+                            .add(coordinate((Symbol) lib.getKey()));
+                }
+            }
+        }
+
+        var nodes = new ArrayList<DependencyGraph.Node>();
+        for (var lib : libs.entrySet()) {
+            var coordinate = coordinate((Symbol) lib.getKey());
+            var coord = (Map<?, ?>) lib.getValue();
+            var paths = (List<?>) coord.get(KEYWORD.invoke("paths"));
+            nodes.add(new DependencyGraph.Node(
+                    coordinate,
+                    String.valueOf(coord.get(KEYWORD.invoke("mvn/version"))),
+                    paths == null ? List.of() : paths.stream().map(path -> Path.of((String) path)).toList(),
+                    children.getOrDefault(coordinate, List.of())
+            ));
+        }
+        return new DependencyGraph(nodes);
+    }
+
+    private static MavenDependency.Coordinate coordinate(Symbol lib) {
+        return lib.getNamespace() == null
+                ? new MavenDependency.Coordinate(lib.getName(), lib.getName())
+                : new MavenDependency.Coordinate(lib.getNamespace(), lib.getName());
+    }
+
+    @Override
+    public void printTree(List<MavenDependency> dependencies, List<MavenRepository> repositories) {
+        PRINT_TREE.invoke(resolveDeps(dependencies, repositories));
+    }
+
+    static final class Requires {
+        static final IFn KEYWORD;
+        static final IFn SYMBOL;
+
+        static final IFn VECTOR;
+        static final IFn CONJ;
+
+        static final IFn HASH_MAP;
+        static final IFn ASSOC;
+
+        static final IFn RESOLVE_DEPS;
+        static final IFn MAKE_CLASSPATH_MAP;
+        static final IFn PRINT_TREE;
+
+        static {
+            KEYWORD = Clojure.var("clojure.core", "keyword");
+            SYMBOL = Clojure.var("clojure.core", "symbol");
+
+            VECTOR = Clojure.var("clojure.core", "vector");
+            CONJ = Clojure.var("clojure.core", "conj");
+
+            HASH_MAP = Clojure.var("clojure.core", "hash-map");
+            ASSOC = Clojure.var("clojure.core", "assoc");
+
+            var REQUIRE = Clojure.var("clojure.core", "require");
+            REQUIRE.invoke(Clojure.read("[clojure.tools.deps.alpha]"));
+            RESOLVE_DEPS = Clojure.var("clojure.tools.deps.alpha", "resolve-deps");
+            MAKE_CLASSPATH_MAP = Clojure.var("clojure.tools.deps.alpha", "make-classpath-map");
+            PRINT_TREE = Clojure.var("clojure.tools.deps.alpha", "print-tree");
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package dev.mccue.jproject.model;
+
+import com.moandjiezana.toml.Toml;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Modules which are built together. The workspace's jproject.toml lists the directory of every
+ * member, each of which has a jproject.toml of its own, along with which members each member
+ * depends on.
+ *
+ * <pre>
+ * [workspace]
+ * members = ["libs/common", "services/api"]
+ *
+ * [workspace-dependencies]
+ * "services/api" = ["libs/common"]
+ * </pre>
+ *
+ * @param members Every member, in the order they were listed.
+ */
+public record Workspace(List<Member> members) {
+    /**
+     * @param directory The directory of the member, relative to the workspace.
+     * @param module The member's own jproject.toml.
+     * @param dependsOn The directories of the members this member depends on.
+     */
+    public record Member(Path directory, ApplicationModule module, List<Path> dependsOn) {}
+
+    /**
+     * @return Whether the given jproject.toml describes a workspace rather than a single module.
+     */
+    public static boolean isWorkspace(Path file) {
+        var toml = new Toml();
+        toml.read(file.toFile());
+        return toml.containsTable("workspace");
+    }
+
+    public static Workspace fromFile(Path file) throws ApplicationModule.ConstructionException {
+        var toml = new Toml();
+        toml.read(file.toFile());
+        var root = file.toAbsolutePath().getParent();
+
+        if (!toml.containsTable("workspace")) {
+            throw new ApplicationModule.ConstructionException("Missing [workspace]");
+        }
+        final List<Object> listed;
+        try {
+            listed = toml.getTable("workspace").getList("members");
+        } catch (ClassCastException e) {
+            throw new ApplicationModule.ConstructionException("\"members\" in [workspace] must be a list of Strings");
+        }
+        if (listed == null || listed.isEmpty()) {
+            throw new ApplicationModule.ConstructionException("\"members\" in [workspace] must list at least one member");
+        }
+
+        var directories = new LinkedHashSet<Path>();
+        for (var member : listed) {
+            if (!(member instanceof String directory) || directory.isBlank()) {
+                throw new ApplicationModule.ConstructionException("\"members\" in [workspace] must be a list of Strings");
+            }
+            directories.add(Path.of(directory).normalize());
+        }
+
+        var dependsOn = new HashMap<Path, List<Path>>();
+        if (toml.containsTable("workspace-dependencies")) {
+            for (var entry : toml.getTable("workspace-dependencies").entrySet()) {
+                var key = entry.getKey();
+                if (key.startsWith("\"") && key.endsWith("\"")) {
+                    key = key.substring(1, key.length() - 1);
+                }
+                var member = Path.of(key).normalize();
+                if (!directories.contains(member)) {
+                    throw new ApplicationModule.ConstructionException(
+                            "\"" + key + "\" in [workspace-dependencies] is not a member of the workspace"
+                    );
+                }
+                if (!(entry.getValue() instanceof List<?> dependencies)) {
+                    throw new ApplicationModule.ConstructionException(
+                            "\"" + key + "\" in [workspace-dependencies] must be a list of members"
+                    );
+                }
+                var resolved = new ArrayList<Path>();
+                for (var dependency : dependencies) {
+                    var directory = dependency instanceof String string ? Path.of(string).normalize() : null;
+                    if (directory == null || !directories.contains(directory)) {
+                        throw new ApplicationModule.ConstructionException(
+                                "\"" + key + "\" in [workspace-dependencies] depends on " + dependency
+                                        + ", which is not a member of the workspace"
+                        );
+                    }
+                    resolved.add(directory);
+                }
+                dependsOn.put(member, List.copyOf(resolved));
+            }
+        }
+
+        var members = new ArrayList<Member>();
+        for (var directory : directories) {
+            var memberToml = root.resolve(directory).resolve("jproject.toml");
+            if (!Files.isRegularFile(memberToml)) {
+                throw new ApplicationModule.ConstructionException("Missing jproject.toml in member " + directory);
+            }
+            ApplicationModule module;
+            try {
+                module = ApplicationModule.fromFile(memberToml);
+            } catch (ApplicationModule.ConstructionException e) {
+                throw new ApplicationModule.ConstructionException(directory + ": " + e.getMessage());
+            }
+            members.add(new Member(directory, module, dependsOn.getOrDefault(directory, List.of())));
+        }
+        return new Workspace(List.copyOf(members));
+    }
+
+    /**
+     * @return The member in the given directory.
+     */
+    public Member member(Path directory) {
+        return this.members.stream()
+                .filter(member -> member.directory().equals(directory))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Not a member: " + directory));
+    }
+
+    /**
+     * @return Every member the given member depends on, directly or not, nearest first.
+     */
+    public List<Member> dependenciesOf(Member member) {
+        var seen = new LinkedHashSet<Path>();
+        var queue = new ArrayDeque<>(member.dependsOn());
+        while (!queue.isEmpty()) {
+            var directory = queue.poll();
+            if (seen.add(directory)) {
+                queue.addAll(member(directory).dependsOn());
+            }
+        }
+        return seen.stream().map(this::member).toList();
+    }
+}
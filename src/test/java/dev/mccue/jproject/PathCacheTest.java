@@ -0,0 +1,43 @@
+package dev.mccue.jproject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PathCacheTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void entriesSurviveANewCache() {
+        var cacheDir = this.directory.resolve(".path-cache");
+        var resolutions = new AtomicInteger();
+
+        assertEquals("lib/a", new PathCache(cacheDir).path("key", () -> {
+            resolutions.incrementAndGet();
+            return "lib/a";
+        }));
+        assertEquals("lib/a", new PathCache(cacheDir).path("key", () -> {
+            resolutions.incrementAndGet();
+            return "lib/b";
+        }));
+        assertEquals(1, resolutions.get());
+    }
+
+    @Test
+    public void legacySingleFileCacheIsReplaced() throws IOException {
+        // What the cache used to be: one serialized map where the directory now goes.
+        var cacheDir = this.directory.resolve(".path-cache");
+        Files.write(cacheDir, new byte[] { (byte) 0xAC, (byte) 0xED, 0x00, 0x05 });
+
+        assertEquals("lib/a", new PathCache(cacheDir).path("key", () -> "lib/a"));
+        assertTrue(Files.isDirectory(cacheDir));
+        assertEquals("lib/a", new PathCache(cacheDir).path("key", () -> "lib/b"));
+    }
+}
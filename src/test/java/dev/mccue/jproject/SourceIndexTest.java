@@ -0,0 +1,54 @@
+package dev.mccue.jproject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SourceIndexTest {
+    @TempDir
+    Path directory;
+
+    private Path write(String relative) throws IOException {
+        var file = this.directory.resolve(relative);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "");
+        return file;
+    }
+
+    @Test
+    public void linkedDirectoriesAreFollowedButNotForever() throws IOException {
+        var project = this.directory.resolve("project");
+        write("project/src/a/A.java");
+        write("shared/b/B.java");
+        Files.createSymbolicLink(project.resolve("src/b"), this.directory.resolve("shared/b"));
+        // A link back up the tree, which would never end if it were followed.
+        Files.createSymbolicLink(project.resolve("src/a/loop"), project.resolve("src"));
+
+        var index = SourceIndex.scan(project, this.directory.resolve("index"));
+
+        assertEquals(
+                List.of(project.resolve("src/a/A.java"), project.resolve("src/b/B.java")),
+                index.files(Path.of("src"), ".java")
+        );
+    }
+
+    @Test
+    public void onlyHiddenDirectoriesAtTheTopAreSkipped() throws IOException {
+        var project = this.directory.resolve("project");
+        write("project/.idea/workspace.xml");
+        write("project/src/.git/HEAD");
+        var wellKnown = write("project/src/.well-known/security.txt");
+
+        var index = SourceIndex.scan(project, this.directory.resolve("index"));
+
+        assertEquals(List.of(wellKnown), index.files(Path.of(""), ".txt"));
+        assertEquals(List.of(), index.files(Path.of(""), ".xml"));
+        assertEquals(List.of(), index.files(Path.of(""), "HEAD"));
+    }
+}
@@ -0,0 +1,222 @@
+package dev.mccue.jproject.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Resolves against a file:// repository made fresh for each test, with a local repository of
+ * its own, so nothing is downloaded and nothing is shared with other tests.
+ */
+public class MavenResolverTest {
+    private static final String GROUP_ID = "fixture";
+
+    @TempDir
+    Path directory;
+
+    private Path repository;
+    private MavenResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        this.repository = this.directory.resolve("repository");
+        this.resolver = new MavenResolver(this.directory.resolve("local"));
+    }
+
+    /**
+     * Publishes an artifact to the fixture repository, with the given elements inside
+     * {@code <project>} after its coordinates.
+     */
+    private void publish(String artifactId, String version, String body) throws IOException {
+        var directory = this.repository.resolve(GROUP_ID).resolve(artifactId).resolve(version);
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve(artifactId + "-" + version + ".pom"), """
+                <project>
+                    <modelVersion>4.0.0</modelVersion>
+                    <groupId>%s</groupId>
+                    <artifactId>%s</artifactId>
+                    <version>%s</version>
+                    %s
+                </project>
+                """.formatted(GROUP_ID, artifactId, version, body));
+        Files.write(directory.resolve(artifactId + "-" + version + ".jar"), new byte[0]);
+    }
+
+    private static String dependency(String artifactId, String version) {
+        return dependency(artifactId, version, "");
+    }
+
+    private static String dependency(String artifactId, String version, String extra) {
+        return """
+                <dependency>
+                    <groupId>%s</groupId>
+                    <artifactId>%s</artifactId>
+                    %s
+                    %s
+                </dependency>
+                """.formatted(
+                GROUP_ID,
+                artifactId,
+                version == null ? "" : "<version>" + version + "</version>",
+                extra
+        );
+    }
+
+    private static String dependencies(String... dependencies) {
+        return "<dependencies>" + String.join("", dependencies) + "</dependencies>";
+    }
+
+    private DependencyGraph resolve(String artifactId, String version) {
+        return this.resolver.graph(
+                List.of(new MavenDependency(GROUP_ID, artifactId, version)),
+                List.of(new MavenRepository("fixture", this.repository.toUri()))
+        );
+    }
+
+    private static Optional<String> version(DependencyGraph graph, String artifactId) {
+        return graph.node(new MavenDependency.Coordinate(GROUP_ID, artifactId))
+                .map(DependencyGraph.Node::version);
+    }
+
+    @Test
+    public void nearestVersionWins() throws IOException {
+        publish("shared", "1.0", "");
+        publish("shared", "2.0", "");
+        publish("shared", "3.0", "");
+        publish("deep", "1.0", dependencies(dependency("shared", "3.0")));
+        publish("middle", "1.0", dependencies(dependency("deep", "1.0")));
+        publish("first", "1.0", dependencies(dependency("shared", "1.0")));
+        publish("second", "1.0", dependencies(dependency("shared", "2.0")));
+        publish("app", "1.0", dependencies(
+                dependency("middle", "1.0"),
+                dependency("first", "1.0"),
+                dependency("second", "1.0")
+        ));
+
+        var graph = resolve("app", "1.0");
+
+        // Depth 2 beats depth 3, and between the two at depth 2 the first declared wins.
+        assertEquals(Optional.of("1.0"), version(graph, "shared"));
+        var jar = graph.node(new MavenDependency.Coordinate(GROUP_ID, "shared")).orElseThrow().paths().get(0);
+        assertEquals(
+                this.directory.resolve("local").resolve("fixture/shared/1.0/shared-1.0.jar"),
+                jar
+        );
+        assertTrue(Files.exists(jar));
+    }
+
+    @Test
+    public void exclusionsApplyToEverythingBelow() throws IOException {
+        publish("excluded", "1.0", "");
+        publish("kept", "1.0", "");
+        publish("inner", "1.0", dependencies(dependency("excluded", "1.0"), dependency("kept", "1.0")));
+        publish("outer", "1.0", dependencies(dependency("inner", "1.0")));
+        publish("app", "1.0", dependencies(dependency("outer", "1.0", """
+                <exclusions>
+                    <exclusion>
+                        <groupId>fixture</groupId>
+                        <artifactId>excluded</artifactId>
+                    </exclusion>
+                </exclusions>
+                """)));
+
+        var graph = resolve("app", "1.0");
+
+        assertEquals(Optional.empty(), version(graph, "excluded"));
+        assertEquals(Optional.of("1.0"), version(graph, "kept"));
+    }
+
+    @Test
+    public void importedBomManagesVersions() throws IOException {
+        publish("managed", "1.0", "");
+        publish("managed", "2.0", "");
+        publish("bom", "1.0", """
+                <packaging>pom</packaging>
+                <dependencyManagement>
+                """ + dependencies(dependency("managed", "2.0")) + """
+                </dependencyManagement>
+                """);
+        publish("app", "1.0", """
+                <dependencyManagement>
+                """ + dependencies(dependency("bom", "1.0", "<type>pom</type><scope>import</scope>")) + """
+                </dependencyManagement>
+                """ + dependencies(dependency("managed", null)));
+
+        var graph = resolve("app", "1.0");
+
+        assertEquals(Optional.of("2.0"), version(graph, "managed"));
+        assertEquals(Optional.empty(), version(graph, "bom"));
+    }
+
+    @Test
+    public void parentPropertiesManagementAndDependenciesAreInherited() throws IOException {
+        publish("from-property", "1.5", "");
+        publish("from-management", "2.5", "");
+        publish("from-parent", "1.0", "");
+        publish("parent", "1.0", """
+                <packaging>pom</packaging>
+                <properties>
+                    <property.version>1.5</property.version>
+                </properties>
+                <dependencyManagement>
+                """ + dependencies(dependency("from-management", "2.5")) + """
+                </dependencyManagement>
+                """ + dependencies(dependency("from-parent", "1.0")));
+        publish("app", "1.0", """
+                <parent>
+                    <groupId>fixture</groupId>
+                    <artifactId>parent</artifactId>
+                    <version>1.0</version>
+                </parent>
+                """ + dependencies(
+                dependency("from-property", "${property.version}"),
+                dependency("from-management", null)
+        ));
+
+        var graph = resolve("app", "1.0");
+
+        assertEquals(Optional.of("1.5"), version(graph, "from-property"));
+        assertEquals(Optional.of("2.5"), version(graph, "from-management"));
+        assertEquals(Optional.of("1.0"), version(graph, "from-parent"));
+        assertEquals(Optional.empty(), version(graph, "parent"));
+    }
+
+    @Test
+    public void laterRepositoriesAreTriedWhenOneFails() throws IOException {
+        publish("app", "1.0", "");
+        var corrupt = this.directory.resolve("corrupt");
+        var pom = corrupt.resolve("fixture/app/1.0/app-1.0.pom");
+        Files.createDirectories(pom.getParent());
+        Files.writeString(pom, "<project>");
+        Files.writeString(Checksums.Algorithm.SHA1.sidecar(pom), "0".repeat(40));
+
+        var graph = this.resolver.graph(
+                List.of(new MavenDependency(GROUP_ID, "app", "1.0")),
+                List.of(
+                        new MavenRepository("corrupt", corrupt.toUri()),
+                        new MavenRepository("fixture", this.repository.toUri())
+                )
+        );
+
+        assertEquals(Optional.of("1.0"), version(graph, "app"));
+    }
+
+    @Test
+    public void failuresAreNotRemembered() throws IOException {
+        var repositories = List.of(new MavenRepository("fixture", this.repository.toUri()));
+        var dependencies = List.of(new MavenDependency(GROUP_ID, "late", "1.0"));
+        assertThrows(MavenResolver.ResolutionException.class, () -> this.resolver.graph(dependencies, repositories));
+
+        publish("late", "1.0", "");
+
+        assertEquals(Optional.of("1.0"), version(this.resolver.graph(dependencies, repositories), "late"));
+    }
+}